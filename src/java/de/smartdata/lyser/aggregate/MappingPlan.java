@@ -0,0 +1,204 @@
+package de.smartdata.lyser.aggregate;
+
+import de.smartdata.lyser.jsonhelper.JsonPointerHelper;
+import de.smartdata.lyser.jsonhelper.NumericAggregator;
+import de.smartdata.lyser.jsonhelper.StringAggregator;
+import de.smartdata.lyser.rest.dataaggregation.MappingConfig;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonPointer;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapping definitions compiled for execution on many datasets. JSON pointers
+ * are created once and mappings are grouped by their source attribute, so
+ * that each source attribute is parsed only once per dataset and all pointers
+ * into it are evaluated on the same parsed value.
+ *
+ * @author Florian Fehring
+ */
+public class MappingPlan {
+
+    /**
+     * Mapping with its prepared pointer
+     */
+    private static class CompiledMapping {
+
+        final String targetAttr;
+        final String pointerText;
+        final JsonPointer pointer;
+
+        CompiledMapping(String targetAttr, String pointerText, JsonPointer pointer) {
+            this.targetAttr = targetAttr;
+            this.pointerText = pointerText;
+            this.pointer = pointer;
+        }
+    }
+
+    /**
+     * Mappings reading from the same source attribute
+     */
+    private static class SourceGroup {
+
+        final String sourceAttr;
+        final List<CompiledMapping> direct = new ArrayList<>();
+        final List<CompiledMapping> pointered = new ArrayList<>();
+        // Errors of mappings with invalid pointers, reported per dataset
+        final List<JsonValue> invalid = new ArrayList<>();
+
+        SourceGroup(String sourceAttr) {
+            this.sourceAttr = sourceAttr;
+        }
+    }
+
+    private final List<SourceGroup> groups = new ArrayList<>();
+    private final Map<String, String> functions = new HashMap<>();
+    private final List<JsonValue> errors = new ArrayList<>();
+
+    /**
+     * Compiles the mapping definitions
+     *
+     * @param mapping Mapping definitions
+     */
+    public MappingPlan(Map<String, MappingConfig> mapping) {
+        Map<String, SourceGroup> groupsByAttr = new LinkedHashMap<>();
+        if (mapping == null) {
+            return;
+        }
+        for (MappingConfig curMapping : mapping.values()) {
+            if (curMapping.aggregate != null && !this.functions.containsKey(curMapping.target_attr)) {
+                String function = curMapping.aggregate.toLowerCase();
+                if (NumericAggregator.FUNCTIONS.contains(function)) {
+                    this.functions.put(curMapping.target_attr, function);
+                } else {
+                    this.errors.add(Json.createValue("Unknown aggregate function >" + curMapping.aggregate + "< for >" + curMapping.target_attr + "<, using the default."));
+                }
+            }
+            SourceGroup group = groupsByAttr.computeIfAbsent(curMapping.source_attr, SourceGroup::new);
+            if (curMapping.source_pointer == null) {
+                group.direct.add(new CompiledMapping(curMapping.target_attr, null, null));
+                continue;
+            }
+            try {
+                JsonPointer pointer = Json.createPointer(curMapping.source_pointer);
+                group.pointered.add(new CompiledMapping(curMapping.target_attr, curMapping.source_pointer, pointer));
+            } catch (JsonException ex) {
+                group.invalid.add(Json.createValue("Could not create JsonPointer from >" + curMapping.source_pointer + "<: " + ex.getLocalizedMessage()));
+            }
+        }
+        this.groups.addAll(groupsByAttr.values());
+    }
+
+    /**
+     * Gets the errors found while compiling, e.g. unknown aggregate functions.
+     * Invalid pointers are reported for every dataset by apply(), mappings
+     * with invalid pointers are not executed.
+     *
+     * @return Errors as JSON values
+     */
+    public List<JsonValue> getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Creates an aggregator for the numeric values of one cluster
+     *
+     * @param traceability Keep the values for the traceability output
+     * @return Aggregator using the configured functions
+     */
+    public NumericAggregator createNumericAggregator(boolean traceability) {
+        return new NumericAggregator(this.functions, traceability);
+    }
+
+    /**
+     * Creates an aggregator for the text values of one cluster
+     *
+     * @param traceability Keep the values for the traceability output
+     * @return Aggregator using the configured functions
+     */
+    public StringAggregator createStringAggregator(boolean traceability) {
+        return new StringAggregator(this.functions, traceability);
+    }
+
+    /**
+     * Executes the mappings on one dataset
+     *
+     * @param dataset Dataset to read from
+     * @param numericAggregator Aggregator for numeric values
+     * @param stringAggregator Aggregator for other values
+     * @param sink Receiver for errors
+     * @return true if at least one value was taken from the dataset
+     */
+    public boolean apply(JsonObject dataset, NumericAggregator numericAggregator, StringAggregator stringAggregator, TemporalClusterMaker.ClusterSink sink) {
+        boolean used = false;
+        for (SourceGroup curGroup : this.groups) {
+            try {
+                String sourceVal = dataset.getString(curGroup.sourceAttr, null);
+                if (sourceVal == null) {
+                    for (int i = 0; i < curGroup.direct.size() + curGroup.pointered.size() + curGroup.invalid.size(); i++) {
+                        sink.error(Json.createValue("Attribute >" + curGroup.sourceAttr + "< was not found in dataset >" + dataset.getInt("id") + "<."));
+                    }
+                    continue;
+                }
+
+                if (!curGroup.direct.isEmpty()) {
+                    String cleanedVal = TemporalClusterMaker.unwrapQuotedString(sourceVal);
+                    boolean numeric = TemporalClusterMaker.isNumeric(cleanedVal);
+                    for (CompiledMapping curMapping : curGroup.direct) {
+                        add(curMapping.targetAttr, cleanedVal, numeric, numericAggregator, stringAggregator);
+                    }
+                    used = true;
+                }
+
+                if (curGroup.pointered.isEmpty() && curGroup.invalid.isEmpty()) {
+                    continue;
+                }
+                // Parse the attribute once for all pointers into it
+                JsonObject value_json;
+                try (JsonReader reader = Json.createReader(new StringReader(sourceVal))) {
+                    value_json = reader.readObject();
+                }
+                for (JsonValue curError : curGroup.invalid) {
+                    sink.error(curError);
+                }
+                for (CompiledMapping curMapping : curGroup.pointered) {
+                    try {
+                        if (curMapping.pointer.containsValue(value_json)) {
+                            String valStr = TemporalClusterMaker.unwrapQuotedString(curMapping.pointer.getValue(value_json).toString());
+                            add(curMapping.targetAttr, valStr, TemporalClusterMaker.isNumeric(valStr), numericAggregator, stringAggregator);
+                            used = true;
+                        }
+                    } catch (JsonException ex) {
+                        String suggestion = JsonPointerHelper.suggestPointer(value_json, curMapping.pointerText);
+                        if (suggestion != null) {
+                            sink.error(Json.createObjectBuilder()
+                                    .add("incorrect", curMapping.pointerText)
+                                    .add("suggestion", suggestion)
+                                    .add("json", value_json).build());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("ERROR occurred: " + e.getLocalizedMessage());
+                e.printStackTrace();
+            }
+        }
+        return used;
+    }
+
+    private static void add(String targetAttr, String value, boolean numeric, NumericAggregator numericAggregator, StringAggregator stringAggregator) {
+        if (numeric) {
+            numericAggregator.add(targetAttr, value);
+        } else {
+            stringAggregator.add(targetAttr, value);
+        }
+    }
+}
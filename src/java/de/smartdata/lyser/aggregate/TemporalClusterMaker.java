@@ -2,29 +2,31 @@ package de.smartdata.lyser.aggregate;
 
 import de.ngi.logging.Logger;
 import de.ngi.restutils.DateTimeParser;
-import de.smartdata.lyser.jsonhelper.JsonPointerHelper;
+import de.smartdata.lyser.config.ApplicationExecutors;
+import de.smartdata.lyser.config.Configuration;
+import de.smartdata.lyser.data.MergingRecordCursor;
+import de.smartdata.lyser.data.SmartDataAccessorException;
 import de.smartdata.lyser.jsonhelper.NumericAggregator;
 import de.smartdata.lyser.jsonhelper.StringAggregator;
 import de.smartdata.lyser.rest.dataaggregation.MappingConfig;
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
-import jakarta.json.JsonException;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
-import jakarta.json.JsonPointer;
-import jakarta.json.JsonReader;
-import java.io.StringReader;
-import java.time.Duration;
+import jakarta.json.JsonValue;
 import java.time.Instant;
-import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.BooleanSupplier;
 
 /**
  * This action collects data from one ore more datasets and merges it into one
@@ -34,156 +36,341 @@ import java.util.stream.Collectors;
  */
 public class TemporalClusterMaker {
 
-    private Map<String, MappingConfig> mapping = new HashMap();
+    /**
+     * Receives the results of the clustering as they are produced
+     */
+    public interface ClusterSink {
+
+        void record(JsonObject record);
+
+        void error(JsonValue error);
+    }
+
+    // Attribute of the cluster records holding their average timestamp. It is
+    // the same for all requests, whatever the date attributes of the sources.
+    public static final String TIMESTAMP_ATTR = "ts";
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    // Clusters per worker that may wait for delivery
+    private static final int PENDING_PER_WORKER = 4;
+    private static final ForkJoinPool POOL = createPool();
+
+    /**
+     * Creates the pool for aggregating clusters. It is registered with the
+     * application, so that its threads are stopped on undeploy.
+     */
+    private static ForkJoinPool createPool() {
+        int parallel = new Configuration().getIntProperty("cluster.parallel", Runtime.getRuntime().availableProcessors());
+        return ApplicationExecutors.register(new ForkJoinPool(Math.max(1, parallel), pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("SmartDataLyser-Cluster-" + t.getPoolIndex());
+            return t;
+        }, null, false));
+    }
+
+    /**
+     * Dataset with its decoded timestamp
+     */
+    private static class TimedRecord {
+
+        final long epochMillis;
+        final JsonObject record;
+
+        TimedRecord(long epochMillis, JsonObject record) {
+            this.epochMillis = epochMillis;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Calculates the cluster windows. Windows restart at the start of each
+     * day (UTC) and are identified by their absolute start, so windows of
+     * different days are not merged. The day boundaries are only calculated
+     * again when a timestamp leaves the current day.
+     */
+    private static class Windows {
+
+        final long clusterMillis;
+        final int clusterSeconds;
+        long dayStart = 0;
+        long dayEnd = Long.MIN_VALUE;
+
+        Windows(int clusterSeconds) {
+            this.clusterSeconds = clusterSeconds;
+            this.clusterMillis = clusterSeconds * 1000L;
+        }
+
+        long startOf(long epochMillis) {
+            if (epochMillis >= this.dayEnd || epochMillis < this.dayStart) {
+                this.dayStart = Math.floorDiv(epochMillis, DAY_MILLIS) * DAY_MILLIS;
+                this.dayEnd = this.dayStart + DAY_MILLIS;
+            }
+            long secondsSinceStart = (epochMillis - this.dayStart) / 1000;
+            return this.dayStart + secondsSinceStart / this.clusterSeconds * this.clusterMillis;
+        }
+    }
 
+    private MappingPlan plan = new MappingPlan(new HashMap<>());
+
+    /**
+     * Sets the mapping definitions, they are compiled once for all datasets
+     *
+     * @param mapping Mapping definitions
+     */
     public void setMapping(Map<String, MappingConfig> mapping) {
-        this.mapping = mapping;
+        this.plan = new MappingPlan(mapping);
     }
 
     public JsonObject makeCluster(JsonArray sourceData, String datasource_dateattr, Integer cluster_seconds, Boolean traceability, Boolean onlyclosedclusters, Instant calcStartTime) {
-        Logger.log();
         JsonObjectBuilder result = Json.createObjectBuilder();
+        JsonArrayBuilder clusterErrors = Json.createArrayBuilder();
+        JsonArrayBuilder clusterSets = Json.createArrayBuilder();
 
-        List<JsonObject> sorted = sourceData.getValuesAs(JsonObject.class).stream()
-                .sorted(Comparator.comparing(o -> {
-                    String raw = o.getString(datasource_dateattr);
-                    Instant ts = DateTimeParser.parseTimestamp(raw).toInstant();
-                    return ts;
-                }))
-                .collect(Collectors.toList());
+        this.makeCluster(sourceData, datasource_dateattr, cluster_seconds, traceability, onlyclosedclusters, calcStartTime, new ClusterSink() {
+            @Override
+            public void record(JsonObject record) {
+                clusterSets.add(record);
+            }
+
+            @Override
+            public void error(JsonValue error) {
+                clusterErrors.add(error);
+            }
+        });
+
+        result.add("clustererrors", clusterErrors);
+        result.add("records", clusterSets);
+        return result.build();
+    }
 
-        Map<Long, List<JsonObject>> clusterMap = new TreeMap<>();
-        for (JsonObject obj : sorted) {
-            String raw = obj.getString(datasource_dateattr);
-            Instant ts = DateTimeParser.parseTimestamp(raw).toInstant();
+    /**
+     * Builds the clusters and hands each cluster record to the sink as soon
+     * as it is calculated
+     *
+     * @param sourceData Datasets to cluster
+     * @param datasource_dateattr Attribute holding the datasets timestamp
+     * @param cluster_seconds Length of a cluster window in seconds
+     * @param traceability Add the used datasets to each record
+     * @param onlyclosedclusters Only build clusters whose window is closed
+     * @param calcStartTime Start time of the calculation
+     * @param sink Receiver for records and errors
+     */
+    public void makeCluster(JsonArray sourceData, String datasource_dateattr, Integer cluster_seconds, Boolean traceability, Boolean onlyclosedclusters, Instant calcStartTime, ClusterSink sink) {
+        Logger.log();
+        for (JsonValue curError : this.plan.getErrors()) {
+            sink.error(curError);
+        }
 
-            // Calculate start of the day
-            Instant dayStart = ts.atZone(ZoneOffset.UTC)
-                    .toLocalDate()
-                    .atStartOfDay(ZoneOffset.UTC)
-                    .toInstant();
+        // Decode each timestamp only once, sorting and bucketing use the value
+        List<JsonObject> records = sourceData.getValuesAs(JsonObject.class);
+        List<TimedRecord> sorted = new ArrayList<>(records.size());
+        for (JsonObject curRecord : records) {
+            String raw = curRecord.getString(datasource_dateattr);
+            sorted.add(new TimedRecord(DateTimeParser.parseTimestamp(raw).toInstant().toEpochMilli(), curRecord));
+        }
+        sorted.sort(Comparator.comparingLong(t -> t.epochMillis));
 
-            long secondsSinceStart = Duration.between(dayStart, ts).getSeconds();
-            long clusterKey = secondsSinceStart / cluster_seconds;
+        // Sorted records fill the windows one after another
+        Windows windows = new Windows(cluster_seconds);
+        long curWindow = 0;
+        List<List<TimedRecord>> clustered = new ArrayList<>();
+        List<TimedRecord> curGroup = null;
+        for (TimedRecord curTimed : sorted) {
+            long windowStart = windows.startOf(curTimed.epochMillis);
 
 //            if (onlyclosedclusters) {
-//                // Calculate end time of bucket
-//                Instant bucketEnd = dayStart.plusSeconds((clusterKey + 1) * cluster_seconds);
 //                // Do not fill bucket because its still open
-//                if (bucketEnd.isAfter(calcStartTime)) {
+//                if (windowStart + windows.clusterMillis > calcStartTime.toEpochMilli()) {
 //                    continue;
 //                }
 //            }
-            clusterMap.computeIfAbsent(clusterKey, k -> new ArrayList<>()).add(obj);
+            if (curGroup == null || windowStart != curWindow) {
+                curGroup = new ArrayList<>();
+                clustered.add(curGroup);
+                curWindow = windowStart;
+            }
+            curGroup.add(curTimed);
         }
-        List<List<JsonObject>> clustered = new ArrayList<>(clusterMap.values());
 
-        JsonArrayBuilder clusterErrors = Json.createArrayBuilder();
-        JsonArrayBuilder clusterSets = Json.createArrayBuilder();
+        OrderedEmitter emitter = new OrderedEmitter(traceability, sink);
+        for (List<TimedRecord> group : clustered) {
+            emitter.submit(group);
+        }
+        emitter.finish();
+    }
 
-        for (List<JsonObject> group : clustered) {
-            long sumEpochMillis = 0;
-            int count = 0;
-            for (JsonObject dataset : group) {
-                String raw = dataset.getString(datasource_dateattr);
-                Instant ts = DateTimeParser.parseTimestamp(raw).toInstant();
-                sumEpochMillis += ts.toEpochMilli();
-                count++;
-            }
-            Instant avgTimestamp = Instant.ofEpochMilli(sumEpochMillis / count);
-            JsonObjectBuilder extractedSet = Json.createObjectBuilder().add("ts", avgTimestamp.toString());
-
-            int foundValues = 0;
-            List<JsonObject> usedSets = new ArrayList<>();
-            NumericAggregator numericAggregator = new NumericAggregator();
-            StringAggregator stringAggregator = new StringAggregator();
-
-            for (JsonObject sourceDataset : group) {
-                for (Map.Entry<String, MappingConfig> mappingEntry : mapping.entrySet()) {
-                    MappingConfig mappingEntryValues = mappingEntry.getValue();
-                    String targetAttr = mappingEntryValues.target_attr;
-
-                    try {
-                        String sourceVal = sourceDataset.getString(mappingEntryValues.source_attr, null);
-                        if (sourceVal == null) {
-                            clusterErrors.add("Attribute >" + mappingEntryValues.source_attr + "< was not found in dataset >" + sourceDataset.getInt("id") + "<.");
-                            continue;
-                        }
-
-                        if (mappingEntryValues.source_pointer != null) {
-                            try (JsonReader reader = Json.createReader(new StringReader(sourceVal))) {
-                                JsonObject value_json = reader.readObject();
-                                JsonPointer pointer;
-                                try {
-                                    pointer = Json.createPointer(mappingEntryValues.source_pointer);
-                                } catch (JsonException ex) {
-                                    clusterErrors.add("Could not create JsonPointer from >" + mappingEntryValues.source_pointer + "<: " + ex.getLocalizedMessage());
-                                    continue;
-                                }
-
-                                try {
-                                    if (pointer.containsValue(value_json)) {
-                                        String valStr = unwrapQuotedString(pointer.getValue(value_json).toString());
-                                        if (isNumeric(valStr)) {
-                                            numericAggregator.add(targetAttr, valStr);
-                                        } else {
-                                            stringAggregator.add(targetAttr, valStr);
-                                        }
-                                        foundValues++;
-                                        usedSets.add(sourceDataset);
-                                    }
-                                } catch (JsonException ex) {
-                                    String suggestion = JsonPointerHelper.suggestPointer(value_json, mappingEntryValues.source_pointer);
-                                    if (suggestion != null) {
-                                        clusterErrors.add(Json.createObjectBuilder()
-                                                .add("incorrect", mappingEntryValues.source_pointer)
-                                                .add("suggestion", suggestion)
-                                                .add("json", value_json));
-                                    }
-                                }
-                            }
-                        } else {
-                            String cleanedVal = unwrapQuotedString(sourceVal);
-                            if (isNumeric(cleanedVal)) {
-                                numericAggregator.add(targetAttr, cleanedVal);
-                            } else {
-                                stringAggregator.add(targetAttr, cleanedVal);
-                            }
-                            foundValues++;
-                            usedSets.add(sourceDataset);
-                        }
-
-                    } catch (Exception e) {
-                        System.err.println("ERROR occurred: " + e.getLocalizedMessage());
-                        e.printStackTrace();
+    /**
+     * Builds the clusters from datasets delivered in order of their
+     * timestamps, e.g. merged from sources that are each ordered by time.
+     * Each cluster is handed to the sink as soon as its window is closed, so
+     * only the datasets of the open window are held in memory.
+     *
+     * @param cursor Cursor delivering the datasets ordered by time
+     * @param cluster_seconds Length of a cluster window in seconds
+     * @param traceability Add the used datasets to each record (datasets
+     * must carry the source attribute then)
+     * @param sink Receiver for records and errors
+     * @return Number of clustered datasets
+     * @throws SmartDataAccessorException If the datasets could not be read
+     */
+    public long makeCluster(MergingRecordCursor cursor, Integer cluster_seconds, Boolean traceability, ClusterSink sink) throws SmartDataAccessorException {
+        Logger.log();
+        for (JsonValue curError : this.plan.getErrors()) {
+            sink.error(curError);
+        }
+
+        Windows windows = new Windows(cluster_seconds);
+        long curWindow = 0;
+        long count = 0;
+        boolean unorderedReported = false;
+        OrderedEmitter emitter = new OrderedEmitter(traceability, sink);
+        List<TimedRecord> curGroup = new ArrayList<>();
+        while (cursor.next()) {
+            long windowStart = windows.startOf(cursor.getEpochMillis());
+            if (!curGroup.isEmpty() && windowStart != curWindow) {
+                if (windowStart < curWindow) {
+                    // Window is already closed, keep the dataset in the open one
+                    if (!unorderedReported) {
+                        sink.error(Json.createValue("Datasets are not delivered in order of time, late datasets are added to the open cluster."));
+                        unorderedReported = true;
                     }
+                } else {
+                    emitter.submit(curGroup);
+                    curGroup = new ArrayList<>();
                 }
             }
+            if (curGroup.isEmpty()) {
+                curWindow = windowStart;
+            }
+            curGroup.add(new TimedRecord(cursor.getEpochMillis(), cursor.get()));
+            count++;
+        }
+        if (!curGroup.isEmpty()) {
+            emitter.submit(curGroup);
+        }
+        emitter.finish();
+        return count;
+    }
 
-            if (!usedSets.isEmpty()) {
-                numericAggregator.writeTo(extractedSet, traceability);
-                stringAggregator.writeTo(extractedSet, traceability);
-                // Add used sets for traceability if wanted
-                if (traceability) {
-                    List<String> insertedIds = new ArrayList<>();
-                    JsonArrayBuilder alb = Json.createArrayBuilder();
-                    for (JsonObject curSet : usedSets) {
-                        String sourceId = curSet.getString("source") + "/" + curSet.getJsonNumber("id").longValue();
-                        if (!insertedIds.contains(sourceId)) {
-                            alb.add(sourceId);
-                            insertedIds.add(sourceId);
-                        }
-                    }
-                    extractedSet.add("usedSets", alb);
+    /**
+     * Aggregates the clusters on the fork/join pool and hands the results to
+     * the sink in the order the clusters were submitted. The sink is only
+     * called from the submitting thread. At most a few clusters per worker
+     * are pending, so the streaming mode keeps its memory bound.
+     */
+    private class OrderedEmitter {
+
+        private final Boolean traceability;
+        private final ClusterSink sink;
+        private final Deque<ForkJoinTask<BufferedCluster>> pending = new ArrayDeque<>();
+
+        OrderedEmitter(Boolean traceability, ClusterSink sink) {
+            this.traceability = traceability;
+            this.sink = sink;
+        }
+
+        void submit(List<TimedRecord> group) {
+            if (POOL.getParallelism() <= 1) {
+                emitCluster(group, this.traceability, this.sink);
+                return;
+            }
+            this.pending.add(POOL.submit(() -> {
+                BufferedCluster result = new BufferedCluster();
+                emitCluster(group, this.traceability, result);
+                return result;
+            }));
+            // Deliver finished clusters, wait for the oldest if too many are pending
+            int maxPending = POOL.getParallelism() * PENDING_PER_WORKER;
+            this.deliver(() -> !this.pending.isEmpty()
+                    && (this.pending.peek().isDone() || this.pending.size() > maxPending));
+        }
+
+        void finish() {
+            this.deliver(() -> !this.pending.isEmpty());
+        }
+
+        private void deliver(BooleanSupplier condition) {
+            try {
+                while (condition.getAsBoolean()) {
+                    this.pending.poll().join().replayTo(this.sink);
+                }
+            } catch (RuntimeException ex) {
+                for (ForkJoinTask<BufferedCluster> curTask : this.pending) {
+                    curTask.cancel(false);
                 }
+                this.pending.clear();
+                throw ex;
+            }
+        }
+    }
 
-                clusterSets.add(extractedSet);
+    /**
+     * Keeps the results of one cluster until they can be delivered in order
+     */
+    private static class BufferedCluster implements ClusterSink {
+
+        private final List<JsonValue> errors = new ArrayList<>();
+        private JsonObject record;
+
+        @Override
+        public void record(JsonObject record) {
+            this.record = record;
+        }
+
+        @Override
+        public void error(JsonValue error) {
+            this.errors.add(error);
+        }
+
+        void replayTo(ClusterSink sink) {
+            for (JsonValue curError : this.errors) {
+                sink.error(curError);
+            }
+            if (this.record != null) {
+                sink.record(this.record);
             }
         }
+    }
 
-        result.add("clustererrors", clusterErrors);
-        result.add("records", clusterSets);
-        return result.build();
+    /**
+     * Aggregates the datasets of one window into a cluster record
+     */
+    private void emitCluster(List<TimedRecord> group, Boolean traceability, ClusterSink sink) {
+        long sumEpochMillis = 0;
+        for (TimedRecord curTimed : group) {
+            sumEpochMillis += curTimed.epochMillis;
+        }
+        Instant avgTimestamp = Instant.ofEpochMilli(sumEpochMillis / group.size());
+        JsonObjectBuilder extractedSet = Json.createObjectBuilder().add(TIMESTAMP_ATTR, avgTimestamp.toString());
+
+        List<JsonObject> usedSets = new ArrayList<>();
+        NumericAggregator numericAggregator = this.plan.createNumericAggregator(traceability);
+        StringAggregator stringAggregator = this.plan.createStringAggregator(traceability);
+
+        for (TimedRecord curTimed : group) {
+            if (this.plan.apply(curTimed.record, numericAggregator, stringAggregator, sink)) {
+                usedSets.add(curTimed.record);
+            }
+        }
+
+        if (!usedSets.isEmpty()) {
+            numericAggregator.writeTo(extractedSet, traceability);
+            stringAggregator.writeTo(extractedSet, traceability);
+            // Add used sets for traceability if wanted
+            if (traceability) {
+                List<String> insertedIds = new ArrayList<>();
+                JsonArrayBuilder alb = Json.createArrayBuilder();
+                for (JsonObject curSet : usedSets) {
+                    String sourceId = curSet.getString("source") + "/" + curSet.getJsonNumber("id").longValue();
+                    if (!insertedIds.contains(sourceId)) {
+                        alb.add(sourceId);
+                        insertedIds.add(sourceId);
+                    }
+                }
+                extractedSet.add("usedSets", alb);
+            }
+
+            sink.record(extractedSet.build());
+        }
     }
 
     /**
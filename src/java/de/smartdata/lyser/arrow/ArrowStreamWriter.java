@@ -0,0 +1,356 @@
+package de.smartdata.lyser.arrow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows as Apache Arrow IPC stream (columnar binary format). Rows are
+ * collected into record batches of a fixed number of rows, each batch is
+ * written as soon as it is full. Clients like pyarrow or the Arrow Java
+ * library can read the stream without parsing JSON.
+ *
+ * Supported column types are boolean, 32 and 64 bit integers, 32 and 64 bit
+ * floating point numbers, timestamps (milliseconds, without time zone) and
+ * UTF-8 strings. All columns are nullable.
+ *
+ * @author Florian Fehring
+ */
+public class ArrowStreamWriter implements AutoCloseable {
+
+    public static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    // Arrow format constants (Schema.fbs and Message.fbs)
+    private static final short METADATA_V5 = 4;
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORDBATCH = 3;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_FLOATINGPOINT = 3;
+    private static final byte TYPE_UTF8 = 5;
+    private static final byte TYPE_BOOL = 6;
+    private static final byte TYPE_TIMESTAMP = 10;
+    private static final short PRECISION_SINGLE = 1;
+    private static final short PRECISION_DOUBLE = 2;
+    private static final short UNIT_MILLISECOND = 1;
+    private static final int CONTINUATION = 0xFFFFFFFF;
+
+    /**
+     * Type of a column
+     */
+    public enum ColumnType {
+        BOOL, INT32, INT64, FLOAT32, FLOAT64, TIMESTAMP, UTF8;
+
+        /**
+         * Gets the column type for a database type name, as delivered by
+         * ResultSetMetaData.getColumnTypeName()
+         *
+         * @param typeName Database type name
+         * @return Column type, UTF8 for unknown types
+         */
+        public static ColumnType fromDatabaseType(String typeName) {
+            return switch (typeName) {
+                case "bool", "boolean" -> BOOL;
+                case "int", "int4", "int2", "serial" -> INT32;
+                case "int8", "bigserial" -> INT64;
+                case "float", "float4" -> FLOAT32;
+                case "float8", "numeric" -> FLOAT64;
+                case "timestamp", "date" -> TIMESTAMP;
+                default -> UTF8;
+            };
+        }
+    }
+
+    private final OutputStream os;
+    private final String[] names;
+    private final ColumnType[] types;
+    private final int batchSize;
+    private final Object[][] batch;
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+    private int rows = 0;
+    private boolean started = false;
+
+    /**
+     * Creates a writer
+     *
+     * @param os Stream to write to
+     * @param names Names of the columns
+     * @param types Types of the columns
+     * @param batchSize Number of rows per record batch
+     */
+    public ArrowStreamWriter(OutputStream os, String[] names, ColumnType[] types, int batchSize) {
+        this.os = os;
+        this.names = names;
+        this.types = types;
+        this.batchSize = Math.max(1, batchSize);
+        this.batch = new Object[types.length][this.batchSize];
+    }
+
+    /**
+     * Creates a writer for the columns of a query result
+     *
+     * @param os Stream to write to
+     * @param md Metadata of the ResultSet
+     * @return Writer with column types derived from the database types
+     * @throws SQLException if the metadata can not be read
+     */
+    public static ArrowStreamWriter forResultSet(OutputStream os, ResultSetMetaData md) throws SQLException {
+        int colCount = md.getColumnCount();
+        String[] names = new String[colCount];
+        ColumnType[] types = new ColumnType[colCount];
+        for (int i = 0; i < colCount; i++) {
+            names[i] = md.getColumnName(i + 1);
+            types[i] = ColumnType.fromDatabaseType(md.getColumnTypeName(i + 1));
+        }
+        return new ArrowStreamWriter(os, names, types, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Adds a key value pair to the metadata of the schema. Must be called
+     * before the first row is written.
+     *
+     * @param key Key
+     * @param value Value
+     */
+    public void addMetadata(String key, String value) {
+        this.metadata.put(key, value);
+    }
+
+    /**
+     * Writes the current row of a ResultSet
+     *
+     * @param rs ResultSet positioned on a row, with the columns the writer
+     * was created for
+     * @throws SQLException if a value can not be read
+     * @throws IOException if the stream can not be written
+     */
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        Object[] values = new Object[this.types.length];
+        for (int c = 0; c < this.types.length; c++) {
+            int i = c + 1;
+            values[c] = switch (this.types[c]) {
+                case BOOL -> rs.getBoolean(i);
+                case INT32 -> rs.getInt(i);
+                case INT64 -> rs.getLong(i);
+                case FLOAT32 -> rs.getFloat(i);
+                case FLOAT64 -> rs.getDouble(i);
+                case TIMESTAMP -> {
+                    Timestamp ts = rs.getTimestamp(i);
+                    yield ts != null ? ts.getTime() : null;
+                }
+                case UTF8 -> rs.getString(i);
+            };
+            if (rs.wasNull()) {
+                values[c] = null;
+            }
+        }
+        this.writeRow(values);
+    }
+
+    /**
+     * Writes a row
+     *
+     * @param values Values in order of the columns: Boolean, Number, Long
+     * epoch milliseconds for timestamps or String. Null for missing values.
+     * @throws IOException if the stream can not be written
+     */
+    public void writeRow(Object... values) throws IOException {
+        for (int c = 0; c < this.types.length; c++) {
+            this.batch[c][this.rows] = c < values.length ? values[c] : null;
+        }
+        this.rows++;
+        if (this.rows == this.batchSize) {
+            this.writeBatch();
+        }
+    }
+
+    /**
+     * Writes the remaining rows and the end of the stream
+     *
+     * @throws IOException if the stream can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.started || this.rows > 0) {
+            this.writeBatch();
+        }
+        ByteBuffer eos = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        eos.putInt(CONTINUATION).putInt(0);
+        this.os.write(eos.array());
+        this.os.flush();
+    }
+
+    private void writeSchema() throws IOException {
+        List<FlatTable> fields = new ArrayList<>(this.types.length);
+        for (int c = 0; c < this.types.length; c++) {
+            FlatTable type = new FlatTable();
+            byte typeId;
+            switch (this.types[c]) {
+                case BOOL -> typeId = TYPE_BOOL;
+                case INT32 -> {
+                    typeId = TYPE_INT;
+                    type.addInt(0, 32).addBool(1, true);
+                }
+                case INT64 -> {
+                    typeId = TYPE_INT;
+                    type.addInt(0, 64).addBool(1, true);
+                }
+                case FLOAT32 -> {
+                    typeId = TYPE_FLOATINGPOINT;
+                    type.addShort(0, PRECISION_SINGLE);
+                }
+                case FLOAT64 -> {
+                    typeId = TYPE_FLOATINGPOINT;
+                    type.addShort(0, PRECISION_DOUBLE);
+                }
+                case TIMESTAMP -> {
+                    typeId = TYPE_TIMESTAMP;
+                    type.addShort(0, UNIT_MILLISECOND);
+                }
+                default -> typeId = TYPE_UTF8;
+            }
+            fields.add(new FlatTable()
+                    .addString(0, this.names[c])
+                    .addBool(1, true)
+                    .addByte(2, typeId)
+                    .addTable(3, type)
+                    .addTables(5, new ArrayList<>()));
+        }
+        FlatTable schema = new FlatTable().addTables(1, fields);
+        if (!this.metadata.isEmpty()) {
+            List<FlatTable> keyValues = new ArrayList<>(this.metadata.size());
+            for (Map.Entry<String, String> curEntry : this.metadata.entrySet()) {
+                keyValues.add(new FlatTable().addString(0, curEntry.getKey()).addString(1, curEntry.getValue()));
+            }
+            schema.addTables(2, keyValues);
+        }
+        this.writeMessage(HEADER_SCHEMA, schema, new byte[0]);
+    }
+
+    private void writeBatch() throws IOException {
+        if (!this.started) {
+            this.writeSchema();
+            this.started = true;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ByteBuffer nodes = ByteBuffer.allocate(16 * this.types.length).order(ByteOrder.LITTLE_ENDIAN);
+        List<long[]> buffers = new ArrayList<>();
+        for (int c = 0; c < this.types.length; c++) {
+            Object[] values = this.batch[c];
+
+            // Validity bitmap
+            byte[] validity = new byte[(this.rows + 7) / 8];
+            int nullCount = 0;
+            for (int r = 0; r < this.rows; r++) {
+                if (values[r] != null) {
+                    validity[r >> 3] |= (byte) (1 << (r & 7));
+                } else {
+                    nullCount++;
+                }
+            }
+            nodes.putLong(this.rows).putLong(nullCount);
+            buffers.add(appendBuffer(body, validity));
+
+            switch (this.types[c]) {
+                case BOOL -> {
+                    byte[] bits = new byte[(this.rows + 7) / 8];
+                    for (int r = 0; r < this.rows; r++) {
+                        if (Boolean.TRUE.equals(values[r])) {
+                            bits[r >> 3] |= (byte) (1 << (r & 7));
+                        }
+                    }
+                    buffers.add(appendBuffer(body, bits));
+                }
+                case INT32, FLOAT32 -> {
+                    ByteBuffer data = ByteBuffer.allocate(4 * this.rows).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int r = 0; r < this.rows; r++) {
+                        Number num = (Number) values[r];
+                        if (this.types[c] == ColumnType.INT32) {
+                            data.putInt(num != null ? num.intValue() : 0);
+                        } else {
+                            data.putFloat(num != null ? num.floatValue() : 0f);
+                        }
+                    }
+                    buffers.add(appendBuffer(body, data.array()));
+                }
+                case INT64, TIMESTAMP, FLOAT64 -> {
+                    ByteBuffer data = ByteBuffer.allocate(8 * this.rows).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int r = 0; r < this.rows; r++) {
+                        Number num = (Number) values[r];
+                        if (this.types[c] == ColumnType.FLOAT64) {
+                            data.putDouble(num != null ? num.doubleValue() : 0d);
+                        } else {
+                            data.putLong(num != null ? num.longValue() : 0L);
+                        }
+                    }
+                    buffers.add(appendBuffer(body, data.array()));
+                }
+                case UTF8 -> {
+                    ByteBuffer offsets = ByteBuffer.allocate(4 * (this.rows + 1)).order(ByteOrder.LITTLE_ENDIAN);
+                    ByteArrayOutputStream chars = new ByteArrayOutputStream();
+                    offsets.putInt(0);
+                    for (int r = 0; r < this.rows; r++) {
+                        if (values[r] != null) {
+                            chars.writeBytes(values[r].toString().getBytes(StandardCharsets.UTF_8));
+                        }
+                        offsets.putInt(chars.size());
+                    }
+                    buffers.add(appendBuffer(body, offsets.array()));
+                    buffers.add(appendBuffer(body, chars.toByteArray()));
+                }
+            }
+            Arrays.fill(values, null);
+        }
+
+        ByteBuffer bufferStructs = ByteBuffer.allocate(16 * buffers.size()).order(ByteOrder.LITTLE_ENDIAN);
+        for (long[] curBuffer : buffers) {
+            bufferStructs.putLong(curBuffer[0]).putLong(curBuffer[1]);
+        }
+        FlatTable recordBatch = new FlatTable()
+                .addLong(0, this.rows)
+                .addStructs(1, nodes.array(), this.types.length)
+                .addStructs(2, bufferStructs.array(), buffers.size());
+        this.writeMessage(HEADER_RECORDBATCH, recordBatch, body.toByteArray());
+        this.rows = 0;
+    }
+
+    /**
+     * Appends a buffer to the body, padded to 8 bytes
+     *
+     * @return Offset and length of the buffer within the body
+     */
+    private static long[] appendBuffer(ByteArrayOutputStream body, byte[] data) {
+        long offset = body.size();
+        body.writeBytes(data);
+        int padding = (8 - data.length % 8) % 8;
+        body.writeBytes(new byte[padding]);
+        return new long[]{offset, data.length};
+    }
+
+    private void writeMessage(byte headerType, FlatTable header, byte[] body) throws IOException {
+        FlatTable message = new FlatTable()
+                .addShort(0, METADATA_V5)
+                .addByte(1, headerType)
+                .addTable(2, header)
+                .addLong(3, body.length);
+        byte[] metadata = message.finish();
+        ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        prefix.putInt(CONTINUATION).putInt(metadata.length);
+        this.os.write(prefix.array());
+        this.os.write(metadata);
+        this.os.write(body);
+    }
+}
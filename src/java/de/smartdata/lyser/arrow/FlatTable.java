@@ -0,0 +1,257 @@
+package de.smartdata.lyser.arrow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal FlatBuffers table writer for the Arrow IPC metadata. Supports the
+ * field kinds used by the Arrow schema and record batch messages: scalars,
+ * strings, tables, vectors of tables and vectors of structs. Tables are laid
+ * out front to back, referenced objects are always placed behind the
+ * referencing field, as FlatBuffers requires for unsigned offsets.
+ *
+ * @author Florian Fehring
+ */
+class FlatTable {
+
+    private static final int KIND_BYTE = 1;
+    private static final int KIND_SHORT = 2;
+    private static final int KIND_INT = 4;
+    private static final int KIND_LONG = 8;
+    private static final int KIND_STRING = 10;
+    private static final int KIND_TABLE = 11;
+    private static final int KIND_TABLES = 12;
+    private static final int KIND_STRUCTS = 13;
+
+    private static class Field {
+
+        int id;
+        int kind;
+        long scalar;
+        Object ref;
+        int count;
+    }
+
+    private final List<Field> fields = new ArrayList<>();
+
+    private FlatTable add(int id, int kind, long scalar, Object ref, int count) {
+        Field field = new Field();
+        field.id = id;
+        field.kind = kind;
+        field.scalar = scalar;
+        field.ref = ref;
+        field.count = count;
+        this.fields.add(field);
+        return this;
+    }
+
+    FlatTable addByte(int id, int value) {
+        return this.add(id, KIND_BYTE, value, null, 0);
+    }
+
+    FlatTable addBool(int id, boolean value) {
+        return this.add(id, KIND_BYTE, value ? 1 : 0, null, 0);
+    }
+
+    FlatTable addShort(int id, int value) {
+        return this.add(id, KIND_SHORT, value, null, 0);
+    }
+
+    FlatTable addInt(int id, int value) {
+        return this.add(id, KIND_INT, value, null, 0);
+    }
+
+    FlatTable addLong(int id, long value) {
+        return this.add(id, KIND_LONG, value, null, 0);
+    }
+
+    FlatTable addString(int id, String value) {
+        return this.add(id, KIND_STRING, 0, value, 0);
+    }
+
+    FlatTable addTable(int id, FlatTable table) {
+        return this.add(id, KIND_TABLE, 0, table, 0);
+    }
+
+    FlatTable addTables(int id, List<FlatTable> tables) {
+        return this.add(id, KIND_TABLES, 0, tables, tables.size());
+    }
+
+    /**
+     * Adds a vector of structs consisting of 8 byte aligned members
+     *
+     * @param id Field id
+     * @param data Little endian struct data
+     * @param count Number of structs
+     */
+    FlatTable addStructs(int id, byte[] data, int count) {
+        return this.add(id, KIND_STRUCTS, 0, data, count);
+    }
+
+    /**
+     * Serializes the table as root of a FlatBuffer
+     *
+     * @return FlatBuffer bytes, padded to a multiple of 8
+     */
+    byte[] finish() {
+        Output out = new Output();
+        out.putInt(0);
+        int root = this.write(out);
+        out.patchOffset(0, root);
+        out.align(8);
+        return out.toArray();
+    }
+
+    private int write(Output out) {
+        int numFields = 0;
+        for (Field curField : this.fields) {
+            numFields = Math.max(numFields, curField.id + 1);
+        }
+
+        // vtable in front of the table
+        out.align(2);
+        int vtablePos = out.pos;
+        int vtableSize = 4 + 2 * numFields;
+        out.skip(vtableSize);
+
+        // Table starts with the signed offset to its vtable
+        out.align(8);
+        int tablePos = out.pos;
+        out.putInt(tablePos - vtablePos);
+        int[] fieldOffsets = new int[numFields];
+        int[] refPositions = new int[this.fields.size()];
+        for (int i = 0; i < this.fields.size(); i++) {
+            Field curField = this.fields.get(i);
+            int size = curField.kind <= KIND_LONG ? curField.kind : 4;
+            out.align(size);
+            fieldOffsets[curField.id] = out.pos - tablePos;
+            refPositions[i] = out.pos;
+            switch (size) {
+                case 1 -> out.put((byte) curField.scalar);
+                case 2 -> out.putShort((short) curField.scalar);
+                case 4 -> out.putInt((int) curField.scalar);
+                default -> out.putLong(curField.scalar);
+            }
+        }
+        int tableSize = out.pos - tablePos;
+        out.buf.putShort(vtablePos, (short) vtableSize);
+        out.buf.putShort(vtablePos + 2, (short) tableSize);
+        for (int i = 0; i < numFields; i++) {
+            out.buf.putShort(vtablePos + 4 + 2 * i, (short) fieldOffsets[i]);
+        }
+
+        // Referenced objects behind the table
+        for (int i = 0; i < this.fields.size(); i++) {
+            Field curField = this.fields.get(i);
+            int refPos;
+            switch (curField.kind) {
+                case KIND_STRING -> {
+                    byte[] bytes = ((String) curField.ref).getBytes(StandardCharsets.UTF_8);
+                    out.align(4);
+                    refPos = out.pos;
+                    out.putInt(bytes.length);
+                    out.put(bytes);
+                    out.put((byte) 0);
+                }
+                case KIND_TABLE -> refPos = ((FlatTable) curField.ref).write(out);
+                case KIND_TABLES -> {
+                    @SuppressWarnings("unchecked")
+                    List<FlatTable> tables = (List<FlatTable>) curField.ref;
+                    out.align(4);
+                    refPos = out.pos;
+                    out.putInt(tables.size());
+                    int firstElement = out.pos;
+                    out.skip(4 * tables.size());
+                    for (int t = 0; t < tables.size(); t++) {
+                        int elementPos = tables.get(t).write(out);
+                        out.patchOffset(firstElement + 4 * t, elementPos);
+                    }
+                }
+                case KIND_STRUCTS -> {
+                    // Elements have to be 8 byte aligned, the length is in front of them
+                    out.align(4);
+                    if (out.pos % 8 == 0) {
+                        out.putInt(0);
+                    }
+                    refPos = out.pos;
+                    out.putInt(curField.count);
+                    out.put((byte[]) curField.ref);
+                }
+                default -> {
+                    continue;
+                }
+            }
+            out.patchOffset(refPositions[i], refPos);
+        }
+        return tablePos;
+    }
+
+    /**
+     * Growing little endian buffer
+     */
+    private static class Output {
+
+        ByteBuffer buf = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        int pos = 0;
+
+        void ensure(int bytes) {
+            if (this.pos + bytes > this.buf.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(this.buf.capacity() * 2, this.pos + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(0, this.buf, 0, this.pos);
+                this.buf = grown;
+            }
+        }
+
+        void align(int alignment) {
+            int padding = (alignment - this.pos % alignment) % alignment;
+            this.skip(padding);
+        }
+
+        void skip(int bytes) {
+            this.ensure(bytes);
+            this.pos += bytes;
+        }
+
+        void put(byte value) {
+            this.ensure(1);
+            this.buf.put(this.pos, value);
+            this.pos += 1;
+        }
+
+        void put(byte[] values) {
+            this.ensure(values.length);
+            this.buf.put(this.pos, values);
+            this.pos += values.length;
+        }
+
+        void putShort(short value) {
+            this.ensure(2);
+            this.buf.putShort(this.pos, value);
+            this.pos += 2;
+        }
+
+        void putInt(int value) {
+            this.ensure(4);
+            this.buf.putInt(this.pos, value);
+            this.pos += 4;
+        }
+
+        void putLong(long value) {
+            this.ensure(8);
+            this.buf.putLong(this.pos, value);
+            this.pos += 8;
+        }
+
+        void patchOffset(int fieldPos, int targetPos) {
+            this.buf.putInt(fieldPos, targetPos - fieldPos);
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(this.buf.array(), this.pos);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package de.smartdata.lyser.cache;
+
+import de.smartdata.lyser.data.SmartDataRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Normalized key of a query. Two requests that ask for the same result get
+ * the same fingerprint regardless of the spelling of the SmartData URL
+ * (relative or absolute), the order of the parameters or the order of
+ * collection and filter lists.
+ *
+ * @author Florian Fehring
+ */
+public final class QueryFingerprint {
+
+    private final String endpoint;
+    private final String instance;
+    private final Map<String, String> params = new TreeMap<>();
+    private String key;
+
+    private QueryFingerprint(String endpoint, String instance) {
+        this.endpoint = endpoint;
+        this.instance = instance;
+    }
+
+    /**
+     * Creates a fingerprint for an endpoint on a SmartData instance
+     *
+     * @param endpoint Name of the endpoint (e.g. statistic/count)
+     * @param smartdataurl URL of the SmartData instance
+     * @return Fingerprint without parameters
+     */
+    public static QueryFingerprint of(String endpoint, String smartdataurl) {
+        String instance = "";
+        if (smartdataurl != null) {
+            instance = SmartDataRegistry.getInstanceKey(smartdataurl);
+        }
+        return new QueryFingerprint(endpoint, instance);
+    }
+
+    /**
+     * Adds a parameter. Null values are left out, so a missing parameter and
+     * a parameter without value give the same fingerprint.
+     *
+     * @param name Name of the parameter
+     * @param value Value of the parameter
+     * @return This fingerprint
+     */
+    public QueryFingerprint with(String name, Object value) {
+        if (value != null) {
+            String str = value.toString().trim();
+            if (!str.isEmpty()) {
+                this.params.put(name, str);
+                this.key = null;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a parameter holding a comma separated set of values (e.g.
+     * collection names). The order of the values does not matter.
+     *
+     * @param name Name of the parameter
+     * @param csv Comma separated values
+     * @return This fingerprint
+     */
+    public QueryFingerprint withSet(String name, String csv) {
+        if (csv == null) {
+            return this;
+        }
+        List<String> values = new ArrayList<>();
+        for (String curValue : csv.split(",")) {
+            if (!curValue.isBlank()) {
+                values.add(curValue.trim());
+            }
+        }
+        return this.withSet(name, values);
+    }
+
+    /**
+     * Adds a parameter holding a set of values (e.g. filters). The order of
+     * the values does not matter.
+     *
+     * @param name Name of the parameter
+     * @param values Values of the parameter
+     * @return This fingerprint
+     */
+    public QueryFingerprint withSet(String name, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return this;
+        }
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return this.with(name, String.join(",", sorted));
+    }
+
+    @Override
+    public String toString() {
+        if (this.key == null) {
+            StringBuilder sb = new StringBuilder(this.endpoint).append('@').append(this.instance);
+            for (Map.Entry<String, String> curParam : this.params.entrySet()) {
+                sb.append('|').append(curParam.getKey()).append('=').append(curParam.getValue());
+            }
+            this.key = sb.toString();
+        }
+        return this.key;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.toString().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryFingerprint)) {
+            return false;
+        }
+        return this.toString().equals(obj.toString());
+    }
+}
@@ -0,0 +1,147 @@
+package de.smartdata.lyser.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe cache for calculated results. The number of entries is bounded,
+ * when full the least recently used entry is evicted. Entries older than the
+ * time to live are not delivered and removed.
+ *
+ * @author Florian Fehring
+ * @param <V> Type of the cached results
+ */
+public class ResultCache<V> {
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long created;
+
+        private Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<QueryFingerprint, Entry<V>> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    /**
+     * Creates a result cache
+     *
+     * @param maxEntries Maximum number of entries
+     * @param ttlMillis Time in milliseconds an entry is valid
+     */
+    public ResultCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        // Access order makes the eldest entry the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryFingerprint, Entry<V>> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    ResultCache.this.evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached result
+     *
+     * @param key Fingerprint of the query
+     * @return Cached result or null if there is no valid entry
+     */
+    public synchronized V get(QueryFingerprint key) {
+        Entry<V> entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > this.ttlMillis) {
+            this.entries.remove(key);
+            this.expirations++;
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.value;
+    }
+
+    /**
+     * Stores a result
+     *
+     * @param key Fingerprint of the query
+     * @param value Result to store
+     */
+    public synchronized void put(QueryFingerprint key, V value) {
+        this.entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes a result
+     *
+     * @param key Fingerprint of the query
+     */
+    public synchronized void invalidate(QueryFingerprint key) {
+        this.entries.remove(key);
+    }
+
+    /**
+     * Removes all results
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Removes all expired results
+     */
+    public synchronized void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<V>> it = this.entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().created > this.ttlMillis) {
+                it.remove();
+                this.expirations++;
+            }
+        }
+    }
+
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+}
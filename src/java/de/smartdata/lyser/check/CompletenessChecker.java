@@ -3,6 +3,7 @@ package de.smartdata.lyser.check;
 import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.Period;
 import java.time.temporal.ChronoUnit;
 import static java.time.temporal.ChronoUnit.SECONDS;
 import java.time.temporal.TemporalAmount;
@@ -13,7 +14,6 @@ import java.util.List;
 import java.util.Map;
 import de.smartdata.lyser.data.*;
 import jakarta.json.JsonArray;
-import jakarta.json.JsonValue;
 import jakarta.ws.rs.core.Response;
 
 /**
@@ -71,14 +71,15 @@ public class CompletenessChecker {
             LocalDateTime end) throws SmartDataAccessorException {
 
         SmartDataAccessor sda = new SmartDataAccessor();
-        JsonArray data = sda.fetchData(smartdataurl, collection, storage, dateattribute, filters, dateattribute, start, end, null);
+        // Only the number of sets is needed, so do not keep them
+        long available = sda.streamData(smartdataurl, collection, storage, dateattribute, filters, dateattribute, start, end, null, record -> {
+        });
 
         // Convert option input (string) into duration
         TemporalAmount freq = Duration.ofSeconds(measurefreq);
 
         // Get exepected and available entries
         long expected = this.getNumberOfExpectedEntries(start, end, freq);
-        long available = data.size();
 
         ResponseObjectBuilder rob = new ResponseObjectBuilder();
 
@@ -102,23 +103,21 @@ public class CompletenessChecker {
             LocalDateTime end) throws SmartDataAccessorException {
 
         SmartDataAccessor sda = new SmartDataAccessor();
-        JsonArray data = sda.fetchData(smartdataurl, collection, storage, dateattribute, filters, dateattribute, start, end, null);
+        // Keep only the timestamps of the delivered sets
+        ColumnarDataset data = new ColumnarDataset(dateattribute, new String[0], new String[0]);
+        sda.fetchColumnar(smartdataurl, collection, storage, filters, dateattribute, start, end, null, data);
+        data.sortByTime();
 
         // Convert option input (string) into duration
         TemporalAmount freq = Duration.ofSeconds(measurefreq);
 
-        List<LocalDateTime> datetimes = new ArrayList<>();
-        for (JsonValue curObj : data) {
-            String datestr = curObj.asJsonObject().getString(dateattribute);
-            datetimes.add(LocalDateTime.parse(datestr));
-        }
-
         // Get durations of missing data
         List<TimespanDimension> missingDurations = this.getListOfMissingPeriods(
-                datetimes,
+                data.getTimestamps(),
+                data.size(),
                 start,
                 end,
-                freq);
+                toMillis(freq));
 //
 //        // Filter list (nightly missing data is not important)
 ////        List<TimespanDimension> filterTimeSpans = new ArrayList<>();
@@ -152,8 +151,8 @@ public class CompletenessChecker {
      * @return Number of expected entries
      */
     public long getNumberOfExpectedEntries(LocalDateTime start, LocalDateTime end, TemporalAmount interval) {
-        long secondsDifference = ChronoUnit.SECONDS.between(start, end);
-        long expectedEntries = secondsDifference / interval.get(SECONDS);
+        long millisDifference = ChronoUnit.MILLIS.between(start, end);
+        long expectedEntries = millisDifference / toMillis(interval);
         return expectedEntries;
     }
 
@@ -167,55 +166,74 @@ public class CompletenessChecker {
      * @return List of periods with missing data
      */
     public List<TimespanDimension> getListOfMissingPeriods(List<LocalDateTime> data, LocalDateTime start, LocalDateTime end, TemporalAmount interval) {
-        List<TimespanDimension> periods = new ArrayList<>();
-        // Setup needed variables for periods finding
-        LocalDateTime lastTime = null;
-        long availableEntries = data.size();
-        long remainingEntries = availableEntries;
-        long doneEntries = 0;
-
         // Sort available data
         Collections.sort(data);
+        long[] timestamps = new long[data.size()];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = ColumnarDataset.toEpochMillis(data.get(i));
+        }
+        return this.getListOfMissingPeriods(timestamps, timestamps.length, start, end, toMillis(interval));
+    }
+
+    /**
+     * Gets the length of an interval in milliseconds. Periods are calculated
+     * with the estimated length of their units (e.g. 30.4 days per month).
+     *
+     * @param interval Duration or Period
+     * @return Length in milliseconds
+     */
+    private static long toMillis(TemporalAmount interval) {
+        if (interval instanceof Period) {
+            Period period = (Period) interval;
+            return period.toTotalMonths() * ChronoUnit.MONTHS.getDuration().toMillis()
+                    + period.getDays() * ChronoUnit.DAYS.getDuration().toMillis();
+        }
+        return Duration.from(interval).toMillis();
+    }
 
-        long startexecution = System.currentTimeMillis();
-        long starttickexecution = startexecution;
-        for (LocalDateTime currentDateTime : data) {
+    /**
+     * Gets a list of periods with missing data
+     *
+     * @param timestamps Sorted epoch milliseconds of the available data, as
+     * delivered by a ColumnarDataset (NO_TIME entries are ignored)
+     * @param size Number of valid timestamps
+     * @param start Start of period
+     * @param end End of period
+     * @param intervalMillis Interval in which entries are expected
+     * @return List of periods with missing data
+     */
+    public List<TimespanDimension> getListOfMissingPeriods(long[] timestamps, int size, LocalDateTime start, LocalDateTime end, long intervalMillis) {
+        List<TimespanDimension> periods = new ArrayList<>();
+        boolean first = true;
+        long lastTime = 0;
+        for (int i = 0; i < size; i++) {
+            long currentTime = timestamps[i];
+            if (currentTime == ColumnarDataset.NO_TIME) {
+                continue;
+            }
             // Get missing period at beginning of time
-            if (lastTime == null && currentDateTime.minus(interval) != start) {
-                periods.add(new TimespanDimension(start, currentDateTime.minus(interval)));
+            if (first) {
+                periods.add(new TimespanDimension(start, ColumnarDataset.toLocalDateTime(currentTime - intervalMillis)));
+                first = false;
             } // Get missing period from middle to end of searched period
-            else if (lastTime != null && currentDateTime.isAfter(lastTime.plus(interval))) {
-                periods.add(new TimespanDimension(lastTime.plus(interval), currentDateTime.minus(interval)));
+            else if (currentTime > lastTime + intervalMillis) {
+                periods.add(new TimespanDimension(
+                        ColumnarDataset.toLocalDateTime(lastTime + intervalMillis),
+                        ColumnarDataset.toLocalDateTime(currentTime - intervalMillis)));
             }
-            lastTime = currentDateTime;
-
-            // Get remaining time
-            long endexecution = System.currentTimeMillis();
-//            System.out.println("End: " + endexecution);
-            long neededexecutionSTick = endexecution - starttickexecution;
-            if (neededexecutionSTick > 1000) {
-                System.out.print(".");
-                starttickexecution = endexecution;
-                long neededTime = endexecution - startexecution;
-                System.out.println("Needed time: " + neededTime + " for " + doneEntries);
-
-                long neededTimeForOne = neededTime / doneEntries;
-                long expectedTimeForRemaining = neededTimeForOne * remainingEntries;
-                System.out.println(remainingEntries + " left. Expected time to complete: " + expectedTimeForRemaining / 1000);
+            lastTime = currentTime;
+        }
+        // Get missing period at end of time
+        if (end != null) {
+            if (first) {
+                periods.add(new TimespanDimension(start, end));
+            } else if (ColumnarDataset.toEpochMillis(end) > lastTime + intervalMillis) {
+                periods.add(new TimespanDimension(ColumnarDataset.toLocalDateTime(lastTime + intervalMillis), end));
             }
-
-            remainingEntries--;
-            doneEntries++;
-//            double neededForOne = neededexecution / (availableEntries - remainingEntries);
-//            System.out.println(neededexecution + "For one: " + neededForOne);
-//            Double remaining = (neededForOne * remainingEntries)/1000;
-//            DecimalFormat format = new DecimalFormat("###0.##");
-//            System.out.println("Remaining time: " + format.format(remaining) + " seconds for " + remainingEntries + " remaining entries.");
         }
-
         return periods;
     }
-    
+
     public String getSmartdataRequest() {
         return this.smartdataRequest;
     }
@@ -0,0 +1,83 @@
+package de.smartdata.lyser.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owner of the thread pools of the application. Provides one bounded pool of
+ * workers.threads threads for parallel subtasks (pages, table fan-out, job
+ * workers) and stops all registered pools when the application is undeployed
+ * (see ApplicationLifecycle).
+ *
+ * Subtasks that find all workers busy are executed on the submitting thread.
+ * This bounds threads and database connections without deadlocks when a
+ * worker itself submits subtasks.
+ *
+ * @author Florian Fehring
+ */
+public class ApplicationExecutors {
+
+    public static final int DEFAULT_WORKER_THREADS = 16;
+
+    private static ExecutorService workerExecutor = null;
+    private static final List<ExecutorService> EXECUTORS = new ArrayList<>();
+
+    private ApplicationExecutors() {
+    }
+
+    /**
+     * Gets the shared pool for parallel subtasks
+     *
+     * @return Bounded executor
+     */
+    public static synchronized ExecutorService getWorkerExecutor() {
+        if (workerExecutor == null) {
+            int threads = Math.max(1, new Configuration().getIntProperty("workers.threads", DEFAULT_WORKER_THREADS));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), r -> {
+                        Thread t = new Thread(r, "SmartDataLyser-Worker");
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            workerExecutor = register(executor);
+        }
+        return workerExecutor;
+    }
+
+    /**
+     * Registers a pool owned by the application, so that it is stopped on
+     * undeploy
+     *
+     * @param <T> Type of the executor
+     * @param executor Executor to stop on undeploy
+     * @return The given executor
+     */
+    public static synchronized <T extends ExecutorService> T register(T executor) {
+        EXECUTORS.add(executor);
+        return executor;
+    }
+
+    /**
+     * Stops all registered pools. Running tasks are interrupted.
+     */
+    public static synchronized void shutdown() {
+        for (ExecutorService curExecutor : EXECUTORS) {
+            curExecutor.shutdownNow();
+        }
+        for (ExecutorService curExecutor : EXECUTORS) {
+            try {
+                curExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        EXECUTORS.clear();
+        workerExecutor = null;
+    }
+}
@@ -0,0 +1,20 @@
+package de.smartdata.lyser.config;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Releases application wide resources when the application is undeployed, so
+ * that no threads keep the classloader of the application alive.
+ *
+ * @author Florian Fehring
+ */
+@WebListener
+public class ApplicationLifecycle implements ServletContextListener {
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ApplicationExecutors.shutdown();
+    }
+}
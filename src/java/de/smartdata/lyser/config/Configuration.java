@@ -1,5 +1,9 @@
 package de.smartdata.lyser.config;
 
+import de.fhbielefeld.scl.logger.Logger;
+import de.fhbielefeld.scl.logger.message.Message;
+import de.fhbielefeld.scl.logger.message.MessageLevel;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -80,6 +84,18 @@ public class Configuration {
         return proploaded;
     }
 
+    /**
+     * Gets the time the configuration file was last modified
+     *
+     * @return Modification time in milliseconds or 0 if there is no file
+     */
+    public long getLastModified() {
+        if (this.fileName == null) {
+            return 0L;
+        }
+        return new File(this.fileName).lastModified();
+    }
+
     /**
      * Gets the properties value
      *
@@ -90,6 +106,50 @@ public class Configuration {
         return this.prop.getProperty(name);
     }
 
+    /**
+     * Gets the properties value as number
+     *
+     * @param name Name of the property
+     * @param defaultValue Value used if the property is not set or not a
+     * number
+     * @return properties value or default value
+     */
+    public int getIntProperty(String name, int defaultValue) {
+        String value = this.prop.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            Message msg = new Message("Configuration", MessageLevel.ERROR, "Property >" + name + "< in >" + this.fileName + "< is not a number: " + value);
+            Logger.addMessage(msg);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets the properties value as decimal number
+     *
+     * @param name Name of the property
+     * @param defaultValue Value used if the property is not set or not a
+     * number
+     * @return properties value or default value
+     */
+    public double getDoubleProperty(String name, double defaultValue) {
+        String value = this.prop.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ex) {
+            Message msg = new Message("Configuration", MessageLevel.ERROR, "Property >" + name + "< in >" + this.fileName + "< is not a number: " + value);
+            Logger.addMessage(msg);
+            return defaultValue;
+        }
+    }
+
     public Set<Entry<Object, Object>> getAllProperties() {
         return this.prop.entrySet();
     }
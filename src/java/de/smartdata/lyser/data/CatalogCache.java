@@ -0,0 +1,233 @@
+package de.smartdata.lyser.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Caches catalog metadata of one SmartData instance: tables per schema,
+ * columns with their types, row estimates (reltuples) and the collection
+ * lists reported by the SmartData API. Entries are reloaded after the time
+ * to live has passed or after an explicit invalidation.
+ *
+ * @author Florian Fehring
+ */
+public class CatalogCache {
+
+    /**
+     * Loads the value of an entry on a miss
+     *
+     * @param <T> Type of the cached value
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        T load() throws SmartDataAccessorException;
+    }
+
+    private static class Entry {
+
+        private final Object value;
+        private final long loaded;
+
+        private Entry(Object value, long loaded) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+
+    private volatile DataSource ds;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a catalog cache
+     *
+     * @param ds DataSource to read the catalog from (may be null if only API
+     * based entries are used)
+     * @param ttlMillis Time in milliseconds an entry is used before it is
+     * reloaded
+     */
+    public CatalogCache(DataSource ds, long ttlMillis) {
+        this.ds = ds;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Sets the DataSource, when the connection pool became available after
+     * the cache was created
+     *
+     * @param ds DataSource to read the catalog from
+     */
+    public void setDataSource(DataSource ds) {
+        this.ds = ds;
+    }
+
+    /**
+     * Gets the names of all tables in a schema
+     *
+     * @param schema Name of the schema
+     * @return Unmodifiable set of table names
+     * @throws SmartDataAccessorException
+     */
+    public Set<String> getTables(String schema) throws SmartDataAccessorException {
+        return this.get("tables:" + schema, () -> {
+            Set<String> tables = new HashSet<>();
+            this.query("SELECT tablename FROM pg_catalog.pg_tables WHERE schemaname = ?", rs -> {
+                tables.add(rs.getString(1));
+            }, schema);
+            return Collections.unmodifiableSet(tables);
+        });
+    }
+
+    /**
+     * Checks if a table exists
+     *
+     * @param schema Name of the schema
+     * @param table Name of the table
+     * @return true if the table exists
+     * @throws SmartDataAccessorException
+     */
+    public boolean tableExists(String schema, String table) throws SmartDataAccessorException {
+        return this.getTables(schema).contains(table);
+    }
+
+    /**
+     * Gets the columns of a table with their type names
+     *
+     * @param schema Name of the schema
+     * @param table Name of the table
+     * @return Unmodifiable map of column name to type name in column order
+     * @throws SmartDataAccessorException
+     */
+    public Map<String, String> getColumns(String schema, String table) throws SmartDataAccessorException {
+        return this.get("columns:" + schema + "." + table, () -> {
+            Map<String, String> columns = new LinkedHashMap<>();
+            this.query("SELECT column_name, udt_name FROM information_schema.columns WHERE table_schema = ? AND table_name = ?"
+                    + " ORDER BY ordinal_position", rs -> {
+                columns.put(rs.getString(1), rs.getString(2));
+            }, schema, table);
+            return Collections.unmodifiableMap(columns);
+        });
+    }
+
+    /**
+     * Gets the estimated number of rows of a table (reltuples). Estimates of
+     * all tables in the schema are loaded at once.
+     *
+     * @param schema Name of the schema
+     * @param table Name of the table
+     * @return Estimated rows, 0 if the table is unknown or not analyzed
+     * @throws SmartDataAccessorException
+     */
+    public long getEstimatedRows(String schema, String table) throws SmartDataAccessorException {
+        Map<String, Long> estimates = this.get("reltuples:" + schema, () -> {
+            Map<String, Long> rows = new HashMap<>();
+            this.query("SELECT c.relname, c.reltuples FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace"
+                    + " WHERE n.nspname = ? AND c.relkind IN ('r', 'p')", rs -> {
+                rows.put(rs.getString(1), Math.max(0L, (long) rs.getDouble(2)));
+            }, schema);
+            return Collections.unmodifiableMap(rows);
+        });
+        return estimates.getOrDefault(table, 0L);
+    }
+
+    /**
+     * Gets the collections of a storage as reported by the SmartData API
+     *
+     * @param storage Name of the storage
+     * @param loader Loader requesting the collections from the API
+     * @return Unmodifiable list of collection names
+     * @throws SmartDataAccessorException
+     */
+    public List<String> getCollections(String storage, Loader<List<String>> loader) throws SmartDataAccessorException {
+        return this.get("collections:" + storage, () -> Collections.unmodifiableList(loader.load()));
+    }
+
+    /**
+     * Removes all entries, they are loaded again on next access
+     */
+    public void invalidate() {
+        this.entries.clear();
+    }
+
+    /**
+     * Removes all entries of a schema
+     *
+     * @param schema Name of the schema
+     */
+    public void invalidate(String schema) {
+        this.entries.keySet().removeIf(key -> {
+            String rest = key.substring(key.indexOf(':') + 1);
+            return rest.equals(schema) || rest.startsWith(schema + ".");
+        });
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Loader<T> loader) throws SmartDataAccessorException {
+        Entry entry = this.entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.loaded < this.ttlMillis) {
+            this.hits.incrementAndGet();
+            return (T) entry.value;
+        }
+        this.misses.incrementAndGet();
+        T value = loader.load();
+        this.entries.put(key, new Entry(value, now));
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    private void query(String sql, RowHandler handler, String... params) throws SmartDataAccessorException {
+        if (this.ds == null) {
+            throw new SmartDataAccessorException("No database connection available for reading the catalog.");
+        }
+        try (Connection con = this.ds.getConnection();
+                PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not read catalog: " + ex.getLocalizedMessage());
+        }
+    }
+}
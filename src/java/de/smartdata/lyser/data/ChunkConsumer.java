@@ -0,0 +1,20 @@
+package de.smartdata.lyser.data;
+
+/**
+ * Receives the rows of a columnar dataset chunk by chunk while they are read
+ * from a SmartData instance.
+ *
+ * @author Florian Fehring
+ */
+@FunctionalInterface
+public interface ChunkConsumer {
+
+    /**
+     * Called for every chunk in the order the rows are delivered. The dataset
+     * is cleared and reused for the next chunk afterwards.
+     *
+     * @param chunk Dataset holding the rows of the chunk
+     * @throws SmartDataAccessorException If processing should be aborted
+     */
+    void accept(ColumnarDataset chunk) throws SmartDataAccessorException;
+}
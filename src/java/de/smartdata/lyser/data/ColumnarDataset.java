@@ -0,0 +1,438 @@
+package de.smartdata.lyser.data;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column oriented in-memory dataset for analysis algorithms. Timestamps are
+ * held as epoch milliseconds, numeric attributes as double values and text
+ * attributes as codes into a dictionary shared by all text columns. So the
+ * algorithms work on primitive arrays instead of looking up and boxing the
+ * values of JsonObjects.
+ *
+ * Numeric columns are named by the attribute or by attribute[n] for the n-th
+ * coordinate of a GeoJSON point. Timestamps without zone are taken as UTC,
+ * so they convert back to the same LocalDateTime. Missing numbers are NaN,
+ * missing texts have the code NO_CODE and missing timestamps are NO_TIME.
+ *
+ * @author Florian Fehring
+ */
+public class ColumnarDataset {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+    public static final int NO_CODE = -1;
+
+    // Rows per chunk when the dataset is filled chunk by chunk
+    public static final int DEFAULT_CHUNK_ROWS = 8192;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String timeColumn;
+    private final String[] numberColumns;
+    private final String[] stringColumns;
+    // Attribute and coordinate index of the numeric columns
+    private final String[] numberAttributes;
+    private final int[] numberCoordinates;
+
+    private long[] timestamps;
+    private final double[][] numbers;
+    private final int[][] codes;
+    private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Creates an empty dataset
+     *
+     * @param timeColumn Name of the attribute holding the timestamp
+     * @param numberColumns Names of the numeric columns
+     * @param stringColumns Names of the text columns
+     */
+    public ColumnarDataset(String timeColumn, String[] numberColumns, String[] stringColumns) {
+        this.timeColumn = timeColumn;
+        this.numberColumns = numberColumns;
+        this.stringColumns = stringColumns;
+        this.numberAttributes = new String[numberColumns.length];
+        this.numberCoordinates = new int[numberColumns.length];
+        for (int c = 0; c < numberColumns.length; c++) {
+            String name = numberColumns[c];
+            int bracket = name.indexOf('[');
+            if (bracket > 0 && name.endsWith("]")) {
+                this.numberAttributes[c] = name.substring(0, bracket);
+                this.numberCoordinates[c] = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+            } else {
+                this.numberAttributes[c] = name;
+                this.numberCoordinates[c] = -1;
+            }
+        }
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.numbers = new double[numberColumns.length][INITIAL_CAPACITY];
+        this.codes = new int[stringColumns.length][INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates the select list for filling the dataset from a database table:
+     * timestamp, numeric columns and text columns
+     *
+     * @return Comma separated select expressions
+     */
+    public String getSelectList() {
+        StringBuilder select = new StringBuilder();
+        select.append('"').append(this.timeColumn).append('"');
+        for (int c = 0; c < this.numberColumns.length; c++) {
+            String attr = "\"" + this.numberAttributes[c] + "\"";
+            select.append(", ");
+            switch (this.numberCoordinates[c]) {
+                case -1 -> select.append(attr);
+                case 0 -> select.append("ST_X(").append(attr).append(')');
+                case 1 -> select.append("ST_Y(").append(attr).append(')');
+                default -> select.append("ST_Z(").append(attr).append(')');
+            }
+        }
+        for (String curColumn : this.stringColumns) {
+            select.append(", \"").append(curColumn).append('"');
+        }
+        return select.toString();
+    }
+
+    /**
+     * Gets the attributes needed to fill the dataset from SmartData records
+     *
+     * @return Comma separated attribute names
+     */
+    public String getIncludes() {
+        List<String> includes = new ArrayList<>();
+        includes.add(this.timeColumn);
+        for (String curAttr : this.numberAttributes) {
+            if (!includes.contains(curAttr)) {
+                includes.add(curAttr);
+            }
+        }
+        for (String curAttr : this.stringColumns) {
+            if (!includes.contains(curAttr)) {
+                includes.add(curAttr);
+            }
+        }
+        return String.join(",", includes);
+    }
+
+    /**
+     * Adds the current row of a ResultSet created with the select list of
+     * this dataset
+     *
+     * @param rs ResultSet positioned on a row
+     * @throws SQLException If a value can not be read
+     */
+    public void addRow(ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp(1);
+        int row = this.addRow(ts != null ? toEpochMillis(ts.toLocalDateTime()) : NO_TIME);
+        int i = 2;
+        for (int c = 0; c < this.numberColumns.length; c++, i++) {
+            double value = rs.getDouble(i);
+            if (!rs.wasNull()) {
+                this.numbers[c][row] = value;
+            }
+        }
+        for (int c = 0; c < this.stringColumns.length; c++, i++) {
+            this.setString(c, row, rs.getString(i));
+        }
+    }
+
+    /**
+     * Adds a record delivered by SmartData
+     *
+     * @param record Dataset
+     */
+    public void addRow(JsonObject record) {
+        JsonValue tsValue = record.get(this.timeColumn);
+        long ts = NO_TIME;
+        if (tsValue != null && tsValue.getValueType() == JsonValue.ValueType.STRING) {
+            ts = parseTime(((JsonString) tsValue).getString());
+        }
+        int row = this.addRow(ts);
+        for (int c = 0; c < this.numberColumns.length; c++) {
+            JsonValue value = record.get(this.numberAttributes[c]);
+            if (value != null && this.numberCoordinates[c] >= 0) {
+                value = coordinate(value, this.numberCoordinates[c]);
+            }
+            if (value instanceof JsonNumber number) {
+                this.numbers[c][row] = number.doubleValue();
+            }
+        }
+        for (int c = 0; c < this.stringColumns.length; c++) {
+            JsonValue value = record.get(this.stringColumns[c]);
+            if (value != null && value.getValueType() != JsonValue.ValueType.NULL) {
+                this.setString(c, row, value instanceof JsonString str ? str.getString() : value.toString());
+            }
+        }
+    }
+
+    private static JsonValue coordinate(JsonValue geometry, int index) {
+        if (geometry.getValueType() != JsonValue.ValueType.OBJECT) {
+            return null;
+        }
+        JsonArray coordinates = ((JsonObject) geometry).getJsonArray("coordinates");
+        if (coordinates == null || coordinates.size() <= index) {
+            return null;
+        }
+        return coordinates.get(index);
+    }
+
+    /**
+     * Adds an empty row
+     *
+     * @param timestamp Epoch milliseconds of the row
+     * @return Index of the new row
+     */
+    public int addRow(long timestamp) {
+        if (this.size == this.timestamps.length) {
+            int capacity = this.size * 2;
+            this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+            for (int c = 0; c < this.numbers.length; c++) {
+                this.numbers[c] = Arrays.copyOf(this.numbers[c], capacity);
+            }
+            for (int c = 0; c < this.codes.length; c++) {
+                this.codes[c] = Arrays.copyOf(this.codes[c], capacity);
+            }
+        }
+        int row = this.size++;
+        this.timestamps[row] = timestamp;
+        for (double[] curColumn : this.numbers) {
+            curColumn[row] = Double.NaN;
+        }
+        for (int[] curColumn : this.codes) {
+            curColumn[row] = NO_CODE;
+        }
+        return row;
+    }
+
+    /**
+     * Sets a numeric value
+     *
+     * @param column Index of the numeric column
+     * @param row Index of the row
+     * @param value Value
+     */
+    public void setNumber(int column, int row, double value) {
+        this.numbers[column][row] = value;
+    }
+
+    /**
+     * Sets a text value
+     *
+     * @param column Index of the text column
+     * @param row Index of the row
+     * @param value Value or null
+     */
+    public void setString(int column, int row, String value) {
+        if (value == null) {
+            this.codes[column][row] = NO_CODE;
+            return;
+        }
+        Integer code = this.dictionaryCodes.get(value);
+        if (code == null) {
+            code = this.dictionary.size();
+            this.dictionary.add(value);
+            this.dictionaryCodes.put(value, code);
+        }
+        this.codes[column][row] = code;
+    }
+
+    /**
+     * Removes all rows and dictionary entries. The arrays are kept for
+     * filling the dataset again.
+     */
+    public void clear() {
+        this.size = 0;
+        this.dictionary.clear();
+        this.dictionaryCodes.clear();
+    }
+
+    /**
+     * Orders the rows by their timestamp. Rows without timestamp are placed
+     * first.
+     */
+    public void sortByTime() {
+        for (int r = 1; r < this.size; r++) {
+            if (this.timestamps[r - 1] > this.timestamps[r]) {
+                this.applyOrder(this.timeOrder());
+                return;
+            }
+        }
+    }
+
+    private int[] timeOrder() {
+        // Stable merge sort of the row indices, without boxing them
+        int[] order = new int[this.size];
+        for (int r = 0; r < this.size; r++) {
+            order[r] = r;
+        }
+        int[] buffer = new int[this.size];
+        long[] ts = this.timestamps;
+        for (int width = 1; width < this.size; width *= 2) {
+            for (int lo = 0; lo < this.size - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(lo + 2 * width, this.size);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    buffer[k++] = ts[order[j]] < ts[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < mid) {
+                    buffer[k++] = order[i++];
+                }
+                while (j < hi) {
+                    buffer[k++] = order[j++];
+                }
+                System.arraycopy(buffer, lo, order, lo, hi - lo);
+            }
+        }
+        return order;
+    }
+
+    private void applyOrder(int[] order) {
+        long[] sortedTs = new long[this.timestamps.length];
+        for (int r = 0; r < this.size; r++) {
+            sortedTs[r] = this.timestamps[order[r]];
+        }
+        this.timestamps = sortedTs;
+        for (int c = 0; c < this.numbers.length; c++) {
+            double[] sorted = new double[this.numbers[c].length];
+            for (int r = 0; r < this.size; r++) {
+                sorted[r] = this.numbers[c][order[r]];
+            }
+            this.numbers[c] = sorted;
+        }
+        for (int c = 0; c < this.codes.length; c++) {
+            int[] sorted = new int[this.codes[c].length];
+            for (int r = 0; r < this.size; r++) {
+                sorted[r] = this.codes[c][order[r]];
+            }
+            this.codes[c] = sorted;
+        }
+    }
+
+    /**
+     * Gets the number of rows
+     *
+     * @return Number of rows
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the timestamps. The array may be longer than the dataset, only
+     * the first size() entries are valid.
+     *
+     * @return Epoch milliseconds of the rows
+     */
+    public long[] getTimestamps() {
+        return this.timestamps;
+    }
+
+    /**
+     * Gets the values of a numeric column. The array may be longer than the
+     * dataset, only the first size() entries are valid.
+     *
+     * @param column Index of the numeric column
+     * @return Values of the column
+     */
+    public double[] getNumbers(int column) {
+        return this.numbers[column];
+    }
+
+    /**
+     * Gets the dictionary codes of a text column. The array may be longer
+     * than the dataset, only the first size() entries are valid.
+     *
+     * @param column Index of the text column
+     * @return Codes of the column
+     */
+    public int[] getCodes(int column) {
+        return this.codes[column];
+    }
+
+    /**
+     * Gets the text for a dictionary code
+     *
+     * @param code Code
+     * @return Text or null for NO_CODE
+     */
+    public String decode(int code) {
+        return code == NO_CODE ? null : this.dictionary.get(code);
+    }
+
+    /**
+     * Gets the index of a numeric column
+     *
+     * @param name Column name as given on creation
+     * @return Index or -1 if there is no such column
+     */
+    public int getNumberColumn(String name) {
+        return Arrays.asList(this.numberColumns).indexOf(name);
+    }
+
+    /**
+     * Gets the index of a text column
+     *
+     * @param name Column name as given on creation
+     * @return Index or -1 if there is no such column
+     */
+    public int getStringColumn(String name) {
+        return Arrays.asList(this.stringColumns).indexOf(name);
+    }
+
+    /**
+     * Converts a date to the epoch milliseconds used in the dataset
+     *
+     * @param dateTime Date
+     * @return Epoch milliseconds
+     */
+    public static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Converts epoch milliseconds of the dataset back to a date
+     *
+     * @param epochMillis Epoch milliseconds
+     * @return Date
+     */
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000), Math.floorMod(epochMillis, 1000) * 1000000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Parses a timestamp as delivered by SmartData or the database driver
+     *
+     * @param raw Timestamp in ISO format, with or without offset
+     * @return Epoch milliseconds or NO_TIME if not parseable
+     */
+    public static long parseTime(String raw) {
+        String iso = raw.replace(' ', 'T');
+        try {
+            return toEpochMillis(LocalDateTime.parse(iso));
+        } catch (DateTimeParseException ex) {
+            try {
+                return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ex1) {
+                return NO_TIME;
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package de.smartdata.lyser.data;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Date;
+
+/**
+ * RecordCursor on a database connection. Uses a server side cursor (autocommit
+ * off and a fetch size) and resolves the column metadata only once.
+ *
+ * @author Florian Fehring
+ */
+public class JdbcRecordCursor implements RecordCursor {
+
+    private static final int TYPE_UNSUPPORTED = 0;
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_TIMESTAMP = 6;
+    private static final int TYPE_DATE = 7;
+    private static final int TYPE_STRING = 8;
+
+    private final Connection con;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final String[] colNames;
+    private final String[] colTypeNames;
+    private final int[] colTypes;
+    private JsonObject current;
+
+    /**
+     * Executes the query and opens the cursor. The connection is owned by the
+     * cursor afterwards and closed together with it.
+     *
+     * @param con Connection to use
+     * @param sql Query to execute
+     * @param fetchSize Number of rows fetched per round trip
+     * @throws SQLException If the query could not be executed
+     */
+    public JdbcRecordCursor(Connection con, String sql, int fetchSize) throws SQLException {
+        this.con = con;
+        // Server side cursors are only used outside of autocommit mode
+        con.setAutoCommit(false);
+        this.stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        this.stmt.setFetchSize(fetchSize);
+        this.rs = this.stmt.executeQuery();
+
+        // Resolve metadata once for all rows
+        ResultSetMetaData md = this.rs.getMetaData();
+        int colCount = md.getColumnCount();
+        this.colNames = new String[colCount];
+        this.colTypeNames = new String[colCount];
+        this.colTypes = new int[colCount];
+        for (int i = 0; i < colCount; i++) {
+            this.colNames[i] = md.getColumnName(i + 1);
+            this.colTypeNames[i] = md.getColumnTypeName(i + 1);
+            this.colTypes[i] = switch (this.colTypeNames[i]) {
+                case "bool", "boolean" -> TYPE_BOOLEAN;
+                case "int", "int4" -> TYPE_INT;
+                case "int8", "bigserial" -> TYPE_LONG;
+                case "float", "float4" -> TYPE_FLOAT;
+                case "float8" -> TYPE_DOUBLE;
+                case "timestamp" -> TYPE_TIMESTAMP;
+                case "date" -> TYPE_DATE;
+                case "varchar" -> TYPE_STRING;
+                default -> TYPE_UNSUPPORTED;
+            };
+            if (this.colTypes[i] == TYPE_UNSUPPORTED) {
+                System.out.println("Unsupported column type >" + this.colTypeNames[i] + "< used.");
+            }
+        }
+    }
+
+    /**
+     * Gets the names of the delivered columns
+     *
+     * @return Column names
+     */
+    public String[] getColumnNames() {
+        return this.colNames;
+    }
+
+    /**
+     * Gets the database type names of the delivered columns
+     *
+     * @return Column type names
+     */
+    public String[] getColumnTypeNames() {
+        return this.colTypeNames;
+    }
+
+    /**
+     * Gets the underlying ResultSet for direct column access
+     *
+     * @return ResultSet positioned on the current row
+     */
+    public ResultSet getResultSet() {
+        return this.rs;
+    }
+
+    @Override
+    public boolean next() throws SmartDataAccessorException {
+        try {
+            this.current = null;
+            return this.rs.next();
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not read next dataset an sql error occured: " + ex.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public JsonObject get() {
+        if (this.current == null) {
+            try {
+                this.current = this.buildRecord();
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Could not read dataset: " + ex.getLocalizedMessage(), ex);
+            }
+        }
+        return this.current;
+    }
+
+    private JsonObject buildRecord() throws SQLException {
+        JsonObjectBuilder newdataset = Json.createObjectBuilder();
+        for (int c = 0; c < this.colTypes.length; c++) {
+            int i = c + 1;
+            String colName = this.colNames[c];
+            Object val = this.rs.getObject(i);
+
+            // Null-Werte korrekt behandeln
+            if (val == null) {
+                newdataset.addNull(colName);
+                continue;
+            }
+
+            switch (this.colTypes[c]) {
+                case TYPE_BOOLEAN -> newdataset.add(colName, this.rs.getBoolean(i));
+                case TYPE_INT -> newdataset.add(colName, this.rs.getInt(i));
+                case TYPE_LONG -> newdataset.add(colName, this.rs.getLong(i));
+                case TYPE_FLOAT -> newdataset.add(colName, this.rs.getFloat(i));
+                case TYPE_DOUBLE -> newdataset.add(colName, this.rs.getDouble(i));
+                case TYPE_TIMESTAMP -> {
+                    Date timestamp = this.rs.getTimestamp(i);
+                    if (timestamp != null) {
+                        newdataset.add(colName, timestamp.toString());
+                    }
+                }
+                case TYPE_DATE -> {
+                    Date date = this.rs.getDate(i);
+                    if (date != null) {
+                        newdataset.add(colName, date.toString());
+                    }
+                }
+                case TYPE_STRING -> {
+                    String str = this.rs.getString(i);
+                    if (str != null) {
+                        newdataset.add(colName, str);
+                    }
+                }
+                default -> {
+                    // Unsupported types are reported once when opening the cursor
+                }
+            }
+        }
+        return newdataset.build();
+    }
+
+    @Override
+    public void close() throws SmartDataAccessorException {
+        try {
+            this.rs.close();
+            this.stmt.close();
+            // Read only transaction, nothing to keep
+            this.con.rollback();
+            this.con.setAutoCommit(true);
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not close cursor: " + ex.getLocalizedMessage());
+        } finally {
+            try {
+                this.con.close();
+            } catch (SQLException ex) {
+                throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.smartdata.lyser.data;
+
+import de.ngi.restutils.DateTimeParser;
+import jakarta.json.JsonObject;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges cursors that are each ordered by a date attribute into one cursor
+ * ordered by that attribute. Only the current dataset of each source is held
+ * in memory. The timestamp of every dataset is decoded once and available
+ * with getEpochMillis().
+ *
+ * @author Florian Fehring
+ */
+public class MergingRecordCursor implements RecordCursor {
+
+    /**
+     * Current dataset of one source
+     */
+    private static class Head {
+
+        final int source;
+        JsonObject record;
+        long epochMillis;
+
+        Head(int source) {
+            this.source = source;
+        }
+    }
+
+    private final List<RecordCursor> cursors;
+    private final String dateattr;
+    private final long[] counts;
+    private final PriorityQueue<Head> heads;
+    private Head current;
+    private boolean started = false;
+
+    /**
+     * Creates a merging cursor. The cursors are owned by the merging cursor
+     * afterwards and closed together with it.
+     *
+     * @param cursors Cursors ordered ascending by the date attribute
+     * @param dateattr Attribute holding the datasets timestamp
+     */
+    public MergingRecordCursor(List<RecordCursor> cursors, String dateattr) {
+        this.cursors = cursors;
+        this.dateattr = dateattr;
+        this.counts = new long[cursors.size()];
+        // Sources are compared by index on equal timestamps to keep the order stable
+        this.heads = new PriorityQueue<>(Math.max(1, cursors.size()), (a, b) -> {
+            int cmp = Long.compare(a.epochMillis, b.epochMillis);
+            return cmp != 0 ? cmp : Integer.compare(a.source, b.source);
+        });
+    }
+
+    /**
+     * Moves the cursor of a source and places its dataset in the queue
+     */
+    private void advance(Head head) throws SmartDataAccessorException {
+        RecordCursor cursor = this.cursors.get(head.source);
+        while (cursor.next()) {
+            JsonObject record = cursor.get();
+            String raw = record.getString(this.dateattr, null);
+            if (raw == null) {
+                // Datasets without time can not be placed
+                continue;
+            }
+            head.record = record;
+            head.epochMillis = DateTimeParser.parseTimestamp(raw).toInstant().toEpochMilli();
+            this.counts[head.source]++;
+            this.heads.add(head);
+            return;
+        }
+    }
+
+    @Override
+    public boolean next() throws SmartDataAccessorException {
+        if (!this.started) {
+            this.started = true;
+            for (int i = 0; i < this.cursors.size(); i++) {
+                this.advance(new Head(i));
+            }
+        } else if (this.current != null) {
+            // Dataset of the source is consumed, get its next one
+            Head consumed = this.current;
+            this.current = null;
+            this.advance(consumed);
+        }
+        this.current = this.heads.poll();
+        return this.current != null;
+    }
+
+    @Override
+    public JsonObject get() {
+        return this.current != null ? this.current.record : null;
+    }
+
+    /**
+     * Gets the decoded timestamp of the current dataset
+     *
+     * @return Epoch milliseconds
+     */
+    public long getEpochMillis() {
+        return this.current.epochMillis;
+    }
+
+    /**
+     * Gets the index of the source the current dataset comes from
+     *
+     * @return Index in the list of cursors
+     */
+    public int getSource() {
+        return this.current.source;
+    }
+
+    /**
+     * Gets the number of datasets read from a source so far
+     *
+     * @param source Index in the list of cursors
+     * @return Number of datasets
+     */
+    public long getCount(int source) {
+        return this.counts[source];
+    }
+
+    @Override
+    public void close() throws SmartDataAccessorException {
+        SmartDataAccessorException firstEx = null;
+        for (RecordCursor curCursor : this.cursors) {
+            try {
+                curCursor.close();
+            } catch (SmartDataAccessorException ex) {
+                if (firstEx == null) {
+                    firstEx = ex;
+                }
+            }
+        }
+        if (firstEx != null) {
+            throw firstEx;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.smartdata.lyser.data;
+
+import de.smartdata.lyser.config.ApplicationExecutors;
+import jakarta.json.JsonObject;
+import jakarta.ws.rs.client.WebTarget;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * RecordCursor over multiple pages of a records request to the SmartData API.
+ * Pages are requested concurrently, with a bounded number of requests in
+ * flight, and delivered in the order of the given targets. The requests use
+ * the applications shared worker pool.
+ *
+ * Each page is read completely before it is delivered, so up to maxInFlight
+ * pages plus the page being consumed are held in memory. The size of a page
+ * is given by the time slice it covers (rest.pagehours), so dense collections
+ * need a smaller slice or fewer pages in flight (rest.parallelpages).
+ *
+ * @author Florian Fehring
+ */
+public class PagedRestCursor implements RecordCursor {
+
+    private final Iterator<WebTarget> pendingPages;
+    private final Deque<Future<List<JsonObject>>> inFlight = new ArrayDeque<>();
+    private final int maxInFlight;
+    private Iterator<JsonObject> currentPage = Collections.emptyIterator();
+    private JsonObject current;
+
+    /**
+     * Creates a cursor over the given pages and starts requesting them
+     *
+     * @param pages Targets of the pages in the order they should be delivered
+     * @param maxInFlight Maximum number of concurrent page requests
+     */
+    public PagedRestCursor(List<WebTarget> pages, int maxInFlight) {
+        this.pendingPages = pages.iterator();
+        this.maxInFlight = Math.max(1, maxInFlight);
+        while (this.inFlight.size() < this.maxInFlight && this.pendingPages.hasNext()) {
+            this.requestNextPage();
+        }
+    }
+
+    private void requestNextPage() {
+        WebTarget page = this.pendingPages.next();
+        // Runs on the calling thread if all shared workers are busy
+        this.inFlight.add(ApplicationExecutors.getWorkerExecutor().submit(() -> {
+            List<JsonObject> records = new ArrayList<>();
+            try (RestRecordCursor cursor = new RestRecordCursor(page, "records")) {
+                while (cursor.next()) {
+                    records.add(cursor.get());
+                }
+            }
+            return records;
+        }));
+    }
+
+    @Override
+    public boolean next() throws SmartDataAccessorException {
+        while (!this.currentPage.hasNext()) {
+            Future<List<JsonObject>> nextPage = this.inFlight.poll();
+            if (nextPage == null) {
+                this.current = null;
+                return false;
+            }
+            // Keep the window of running requests filled
+            if (this.pendingPages.hasNext()) {
+                this.requestNextPage();
+            }
+            try {
+                this.currentPage = nextPage.get().iterator();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SmartDataAccessorException("Interrupted while waiting for page: " + ex.getLocalizedMessage());
+            } catch (ExecutionException | CancellationException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                throw new SmartDataAccessorException("Could not get page: " + cause.getLocalizedMessage());
+            }
+        }
+        this.current = this.currentPage.next();
+        return true;
+    }
+
+    @Override
+    public JsonObject get() {
+        return this.current;
+    }
+
+    @Override
+    public void close() {
+        for (Future<List<JsonObject>> curPage : this.inFlight) {
+            curPage.cancel(true);
+        }
+        this.inFlight.clear();
+    }
+}
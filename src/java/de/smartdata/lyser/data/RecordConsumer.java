@@ -0,0 +1,20 @@
+package de.smartdata.lyser.data;
+
+import jakarta.json.JsonObject;
+
+/**
+ * Receives datasets one by one while they are read from a SmartData instance.
+ *
+ * @author Florian Fehring
+ */
+@FunctionalInterface
+public interface RecordConsumer {
+
+    /**
+     * Called for every dataset in the order they are delivered
+     *
+     * @param record Dataset
+     * @throws SmartDataAccessorException If processing should be aborted
+     */
+    void accept(JsonObject record) throws SmartDataAccessorException;
+}
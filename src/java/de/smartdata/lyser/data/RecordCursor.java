@@ -0,0 +1,31 @@
+package de.smartdata.lyser.data;
+
+import jakarta.json.JsonObject;
+
+/**
+ * Forward only cursor over datasets of a SmartData instance. Datasets are
+ * fetched in chunks while the cursor is moved, so that large result sets do
+ * not have to be held in memory. Cursors must be closed after use.
+ *
+ * @author Florian Fehring
+ */
+public interface RecordCursor extends AutoCloseable {
+
+    /**
+     * Moves the cursor to the next dataset
+     *
+     * @return true if there is a next dataset, false if the end is reached
+     * @throws SmartDataAccessorException On error while reading
+     */
+    boolean next() throws SmartDataAccessorException;
+
+    /**
+     * Gets the dataset the cursor currently points to
+     *
+     * @return Current dataset
+     */
+    JsonObject get();
+
+    @Override
+    void close() throws SmartDataAccessorException;
+}
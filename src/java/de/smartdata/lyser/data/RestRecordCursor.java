@@ -0,0 +1,132 @@
+package de.smartdata.lyser.data;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonParser;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.io.InputStream;
+
+/**
+ * RecordCursor on a response of the SmartData API. The response body is
+ * parsed incrementally from the stream, so datasets can be processed while
+ * the response is still being transfered and the body is never held as a
+ * whole in memory.
+ *
+ * @author Florian Fehring
+ */
+public class RestRecordCursor implements RecordCursor {
+
+    private final WebTarget webTarget;
+    private final Response response;
+    private final JsonParser parser;
+    private JsonObject current;
+    private boolean finished = false;
+
+    /**
+     * Sends the request and positions the cursor in front of the first
+     * element of the array stored under the given key.
+     *
+     * @param webTarget Target to request
+     * @param key Name of the attribute holding the array (e.g. records)
+     * @throws SmartDataAccessorException If the request failed or the
+     * response does not contain the array
+     */
+    public RestRecordCursor(WebTarget webTarget, String key) throws SmartDataAccessorException {
+        this.webTarget = webTarget;
+        this.response = webTarget.request(MediaType.APPLICATION_JSON).get();
+        if (Response.Status.OK.getStatusCode() != this.response.getStatus()) {
+            int status = this.response.getStatus();
+            this.response.close();
+            throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() + "< returned status: " + status);
+        }
+        InputStream in = this.response.readEntity(InputStream.class);
+        this.parser = Json.createParser(in);
+        try {
+            if (!this.moveToArray(key)) {
+                this.close();
+                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >" + key + "<");
+            }
+        } catch (JsonException ex) {
+            this.close();
+            throw new SmartDataAccessorException("Could not parse response from >" + webTarget.getUri() + "<: " + ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Walks through the top level object until the array with the given key
+     * starts. Values of other keys are skipped without building them.
+     */
+    private boolean moveToArray(String key) {
+        if (!this.parser.hasNext() || this.parser.next() != JsonParser.Event.START_OBJECT) {
+            return false;
+        }
+        while (this.parser.hasNext()) {
+            JsonParser.Event event = this.parser.next();
+            if (event == JsonParser.Event.END_OBJECT) {
+                return false;
+            }
+            if (event != JsonParser.Event.KEY_NAME) {
+                continue;
+            }
+            boolean found = key.equals(this.parser.getString());
+            JsonParser.Event valueEvent = this.parser.next();
+            if (valueEvent == JsonParser.Event.START_ARRAY) {
+                if (found) {
+                    return true;
+                }
+                this.parser.skipArray();
+            } else if (valueEvent == JsonParser.Event.START_OBJECT) {
+                this.parser.skipObject();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean next() throws SmartDataAccessorException {
+        this.current = null;
+        try {
+            while (!this.finished && this.parser.hasNext()) {
+                JsonParser.Event event = this.parser.next();
+                switch (event) {
+                    case START_OBJECT -> {
+                        this.current = this.parser.getObject();
+                        return true;
+                    }
+                    case START_ARRAY ->
+                        this.parser.skipArray();
+                    case END_ARRAY ->
+                        this.finished = true;
+                    default -> {
+                        // Non object values are not datasets
+                    }
+                }
+            }
+        } catch (JsonException ex) {
+            throw new SmartDataAccessorException("Could not parse response from >" + this.webTarget.getUri() + "<: " + ex.getLocalizedMessage());
+        }
+        this.finished = true;
+        return false;
+    }
+
+    @Override
+    public JsonObject get() {
+        return this.current;
+    }
+
+    @Override
+    public void close() throws SmartDataAccessorException {
+        try {
+            if (this.parser != null) {
+                this.parser.close();
+            }
+        } catch (JsonException ex) {
+            throw new SmartDataAccessorException("Could not close response from >" + this.webTarget.getUri() + "<: " + ex.getLocalizedMessage());
+        } finally {
+            this.response.close();
+        }
+    }
+}
@@ -4,32 +4,36 @@ import de.fhbielefeld.scl.logger.Logger;
 import de.fhbielefeld.scl.logger.message.Message;
 import de.fhbielefeld.scl.logger.message.MessageLevel;
 import de.fhbielefeld.scl.rest.util.WebTargetCreator;
-import de.smartdata.lyser.config.Configuration;
+import de.smartdata.lyser.rollup.RollupStats;
+import de.smartdata.lyser.rollup.RollupStore;
+import de.smartdata.lyser.statistic.HyperLogLog;
+import de.smartdata.lyser.statistic.QuantileSketch;
+import de.smartdata.lyser.statistic.StatisticAccumulator;
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonValue;
-import jakarta.json.stream.JsonParser;
 import jakarta.ws.rs.client.WebTarget;
-import jakarta.ws.rs.core.MediaType;
-import jakarta.ws.rs.core.Response;
-import java.io.StringReader;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
 import javax.sql.DataSource;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonNumber;
-import jakarta.json.JsonObjectBuilder;
-import jakarta.json.JsonReader;
 import jakarta.json.JsonString;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
-import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Methods for accessing a SmartData instance to get data. Aims to simplify the
@@ -41,8 +45,23 @@ public class SmartDataAccessor {
 
     protected String jndi = null;
     protected DataSource ds = null;
+    protected SmartDataInstance instance = null;
     protected String smartdataRequest; // Contains last called URL
 
+    // Number of rows fetched per round trip when streaming from the database
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    // Length of one time slice when requesting pages from the SmartData API
+    public static final int DEFAULT_PAGE_HOURS = 24;
+    // Maximum number of pages a time range is split into
+    public static final int DEFAULT_MAX_PAGES = 64;
+    // Number of pages requested concurrently from the SmartData API
+    public static final int DEFAULT_PARALLEL_PAGES = 4;
+    public static final double DEFAULT_QUANTILE_EPSILON = 0.01;
+    public static final int DEFAULT_REF_PARALLEL = 8;
+    public static final int DEFAULT_REF_UNION_LIMIT = 16;
+    // Aggregates supported by fetchStats
+    public static final List<String> STAT_AGGREGATES = List.of("count", "sum", "min", "max", "mean", "stddev", "median");
+
     /**
      * Geneal purpose accessor
      */
@@ -56,25 +75,18 @@ public class SmartDataAccessor {
      * @param smartdataurl URL to SmartData instance
      */
     public SmartDataAccessor(String smartdataurl) {
-        // Get SmartData instance name
-        int lastSlash = smartdataurl.lastIndexOf("/");
-        String smartdataname = smartdataurl;
-        if (lastSlash >= 0) {
-            smartdataname = smartdataurl.substring(lastSlash + 1);
-        }
-        // Load configuration for instance
-        Configuration conf = new Configuration(smartdataname);
-        this.jndi = conf.getProperty("postgres.jndi");
-        if (this.jndi == null) {
-            this.jndi = "jdbc/SmartData";
-        }
-        try {
-            InitialContext ctx = new InitialContext();
-            this.ds = (DataSource) ctx.lookup(this.jndi);
-        } catch (NamingException ex) {
-            Message msg = new Message("", MessageLevel.ERROR, "Could not access connection pool: " + ex.getLocalizedMessage());
-            Logger.addMessage(msg);
-        }
+        this(SmartDataRegistry.getInstance().getSmartDataInstance(smartdataurl));
+    }
+
+    /**
+     * Optimized SmartDataAccessor for a registered samrtdata instance
+     *
+     * @param instance Resolved SmartData instance
+     */
+    public SmartDataAccessor(SmartDataInstance instance) {
+        this.instance = instance;
+        this.jndi = instance.getJndi();
+        this.ds = instance.getDataSource();
     }
 
     public String getJndi() {
@@ -94,6 +106,19 @@ public class SmartDataAccessor {
         return null;
     }
 
+    /**
+     * Gets the catalog cache of the instance. Accessors without instance get
+     * an uncached catalog.
+     *
+     * @return CatalogCache to use for metadata lookups
+     */
+    public CatalogCache getCatalogCache() {
+        if (this.instance != null) {
+            return this.instance.getCatalogCache();
+        }
+        return new CatalogCache(this.ds, 0);
+    }
+
     /**
      * Gets the number of available datasets
      *
@@ -125,15 +150,25 @@ public class SmartDataAccessor {
      */
     public int fetchCount(String smartdataurl, String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, boolean exact) throws SmartDataAccessorException {
 
+        // Estimates are read from the cached catalog
+        if (!exact && this.ds != null) {
+            return (int) this.getCatalogCache().getEstimatedRows(storage, collection);
+        }
+
+        // Ranges are answered from rollups if enabled
+        if (this.ds != null) {
+            RollupStats rollup = this.fetchRollup(collection, storage, dateattr, start, end, RollupStore.COUNT_ALL);
+            if (rollup != null) {
+                return (int) rollup.getCount();
+            }
+        }
+
         // Local direct db access
         Connection con = this.getConnection();
         if (con != null) {
             try {
                 // SQL-Abfrage mit einem Platzhalter für die Tabelle
-                String sql = "SELECT reltuples AS estimate FROM pg_class WHERE relname = '" + collection + "'";
-                if (exact) {
-                    sql = "SELECT COUNT(*) FROM \"" + storage + "\".\"" + collection + "\"";
-                }
+                String sql = "SELECT COUNT(*) FROM \"" + storage + "\".\"" + collection + "\"" + dateCondition(dateattr, start, end);
                 PreparedStatement preparedStatement = con.prepareStatement(sql);
 
                 // Abfrage ausführen
@@ -172,22 +207,8 @@ public class SmartDataAccessor {
         // Note request URI for documentation
         this.smartdataRequest = webTarget.getUri().toString();
 
-        Response response = webTarget.request(MediaType.APPLICATION_JSON).get();
-        String responseText = response.readEntity(String.class);
-        if (Response.Status.OK.getStatusCode() == response.getStatus()) {
-            JsonParser parser = Json.createParser(new StringReader(responseText));
-            parser.next();
-            JsonArray records = parser.getObject().getJsonArray("records");
-            if (records == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >records<");
-            }
-            JsonObject cobj = records.getJsonObject(0);
-            if (cobj == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >data<");
-            }
-            return cobj.getInt("count");
-        }
-        throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() + "< returned status: " + response.getStatus());
+        JsonObject cobj = this.fetchFirstRecord(webTarget);
+        return cobj.getInt("count");
     }
     
     /**
@@ -213,81 +234,395 @@ public class SmartDataAccessor {
         if (con == null)
             throw new SmartDataAccessorException("No database connection available for fetchCount with reference.");
 
+        List<String> existingTables;
         try {
-            List<String> refTables = new ArrayList<>();
-            String refSql = "SELECT DISTINCT \"" + refColumn + "\" FROM \"" + storage + "\".\"" + collection + "\"";
-            try (PreparedStatement ps = con.prepareStatement(refSql);
-                 ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String refName = rs.getString(1);
-                    if (refName != null && !refName.isBlank()) {
-                        refTables.add(refName.trim());
+            existingTables = this.fetchReferencedTables(con, collection, storage, refColumn);
+
+            // Estimates of all tables are read from the cached catalog
+            if (!exact) {
+                long estimate = 0;
+                for (String table : existingTables) {
+                    estimate += this.getCatalogCache().getEstimatedRows(storage, table);
+                }
+                return (int) estimate;
+            }
+
+            // Few tables are counted with one statement
+            if (existingTables.size() <= this.getRefUnionLimit()) {
+                StringBuilder sql = new StringBuilder("SELECT COALESCE(SUM(c), 0) FROM (");
+                for (int i = 0; i < existingTables.size(); i++) {
+                    if (i > 0) {
+                        sql.append(" UNION ALL ");
                     }
+                    sql.append("SELECT COUNT(*) AS c FROM \"").append(storage).append("\".\"").append(existingTables.get(i)).append("\"")
+                            .append(dateCondition(dateattr, start, end));
                 }
+                sql.append(") AS counts");
+                try (PreparedStatement ps = con.prepareStatement(sql.toString());
+                     ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? (int) rs.getLong(1) : 0;
+                }
+            }
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("SQL error while fetching count by reference: " + ex.getLocalizedMessage());
+        } finally {
+            try {
+                con.close();
+            } catch (SQLException ex) {
+                throw new SmartDataAccessorException("Could not close DB connection. " + ex.getLocalizedMessage());
             }
+        }
 
-            if (refTables.isEmpty()) {
-                throw new SmartDataAccessorException("No referenced tables found in column >" + refColumn + "< of collection >" + collection + "<");
+        // Many tables are counted concurrently
+        List<Long> counts = this.createTableFanOut().run(existingTables, (tableCon, table) -> {
+            String sql = "SELECT COUNT(*) FROM \"" + storage + "\".\"" + table + "\"" + dateCondition(dateattr, start, end);
+            try (PreparedStatement ps = tableCon.prepareStatement(sql);
+                 ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
             }
+        });
+        long totalCount = 0;
+        for (long curCount : counts) {
+            totalCount += curCount;
+        }
+        return (int) totalCount;
+    }
 
-            List<String> existingTables = new ArrayList<>();
-            String checkSql = "SELECT tablename FROM pg_catalog.pg_tables WHERE schemaname = ?";
-            try (PreparedStatement ps = con.prepareStatement(checkSql)) {
-                ps.setString(1, storage);
-                ResultSet rs = ps.executeQuery();
-                List<String> dbTables = new ArrayList<>();
-                while (rs.next()) {
-                    dbTables.add(rs.getString("tablename"));
-                }
-                rs.close();
+    /**
+     * Checks which collections hold more than threshold datasets within the
+     * range. With database access the datasets are not counted, each
+     * collection is probed for at most threshold + 1 rows, so the check costs
+     * index lookups on the date attribute instead of range scans. All
+     * collections are probed with one statement.
+     *
+     * @param smartdataurl SmartDatas URL
+     * @param collections Collections names
+     * @param storage Storages name
+     * @param dateattr Date values holding attribute name
+     * @param start Startdate
+     * @param end Enddate
+     * @param threshold Minimum number of datasets (exclusive) for being active
+     *
+     * @return Activity per collection in order of the given collections,
+     * collections that could not be checked are missing
+     * @throws SmartDataAccessorException
+     */
+    public Map<String, Boolean> fetchActivities(String smartdataurl, List<String> collections, String storage, String dateattr, LocalDateTime start, LocalDateTime end, int threshold) throws SmartDataAccessorException {
+        Map<String, Boolean> activities = new LinkedHashMap<>();
 
-                for (String t : refTables) {
-                    if (dbTables.contains(t)) {
-                        existingTables.add(t);
-                    } else {
-                        System.out.println("[fetchCount] Skipping missing table: " + t);
-                    }
+        // Without database access the activity is calculated from counts
+        if (this.ds == null) {
+            for (String curCol : collections) {
+                try {
+                    activities.put(curCol, this.fetchCount(smartdataurl, curCol, storage, dateattr, start, end, true) > threshold);
+                } catch (SmartDataAccessorException ex) {
+                    Message msg = new Message("", MessageLevel.ERROR, "Could not check activity of >" + curCol + "<: " + ex.getLocalizedMessage());
+                    Logger.addMessage(msg);
                 }
             }
+            return activities;
+        }
 
-            if (existingTables.isEmpty()) {
-                throw new SmartDataAccessorException("No existing referenced tables found in schema >" + storage + "<");
+        // Only collections that have the date attribute can be probed
+        CatalogCache catalog = this.getCatalogCache();
+        List<String> probed = new ArrayList<>();
+        for (String curCol : collections) {
+            if (!catalog.tableExists(storage, curCol)) {
+                continue;
+            }
+            if (dateattr != null && !catalog.getColumns(storage, curCol).containsKey(dateattr)) {
+                continue;
             }
+            probed.add(curCol);
+        }
+        if (probed.isEmpty()) {
+            return activities;
+        }
 
-            int totalCount = 0;
+        // Every probe stops reading after threshold + 1 rows
+        String condition = dateCondition(dateattr, start, end);
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < probed.size(); i++) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT ").append(i).append(" AS idx, (SELECT COUNT(*) FROM (SELECT 1 FROM \"")
+                    .append(storage).append("\".\"").append(probed.get(i)).append("\"")
+                    .append(condition).append(" LIMIT ").append(threshold + 1).append(") p) AS cnt");
+        }
 
-            for (String table : existingTables) {
-                String sql;
-                if (exact) {
-                    sql = "SELECT COUNT(*) FROM \"" + storage + "\".\"" + table + "\"";
-                } else {
-                    sql = "SELECT reltuples AS estimate FROM pg_class WHERE relname = '" + table + "'";
+        boolean[] active = new boolean[probed.size()];
+        try (Connection con = this.ds.getConnection();
+                PreparedStatement ps = con.prepareStatement(sql.toString());
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                active[rs.getInt(1)] = rs.getLong(2) > threshold;
+            }
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not probe activity in >" + storage + "< an sql error occured: " + ex.getLocalizedMessage());
+        }
+        for (int i = 0; i < active.length; i++) {
+            activities.put(probed.get(i), active[i]);
+        }
+        return activities;
+    }
+
+    /**
+     * Creates a fan out for queries over referenced tables. The number of
+     * concurrent connections is configured by ref.parallel.
+     *
+     * @return TableFanOut over the instances datasource
+     * @throws SmartDataAccessorException if there is no datasource
+     */
+    private TableFanOut createTableFanOut() throws SmartDataAccessorException {
+        if (this.ds == null) {
+            throw new SmartDataAccessorException("No database connection available for querying referenced tables.");
+        }
+        int parallel = this.instance != null ? this.instance.getIntProperty("ref.parallel", DEFAULT_REF_PARALLEL) : DEFAULT_REF_PARALLEL;
+        return new TableFanOut(this.ds, parallel);
+    }
+
+    /**
+     * Gets the number of referenced tables up to which one UNION ALL statement
+     * is used instead of concurrent queries (configured by ref.unionlimit).
+     *
+     * @return Maximum number of tables for one statement
+     */
+    private int getRefUnionLimit() {
+        return this.instance != null ? this.instance.getIntProperty("ref.unionlimit", DEFAULT_REF_UNION_LIMIT) : DEFAULT_REF_UNION_LIMIT;
+    }
+
+    /**
+     * Gets the aggregates of a column in a range from the rollups
+     *
+     * @param collection Collections name (Tablename)
+     * @param storage Storage name (Schemaname)
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date
+     * @param end End date
+     * @param column Name of the column or RollupStore.COUNT_ALL
+     * @return Aggregates or null if rollups are not enabled for the instance,
+     * no range is given or the range is too small for using rollups
+     * @throws SmartDataAccessorException
+     */
+    private RollupStats fetchRollup(String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, String column) throws SmartDataAccessorException {
+        if (this.instance == null || this.instance.getRollupStore() == null) {
+            return null;
+        }
+        if (dateattr == null || start == null || end == null || start.equals(LocalDateTime.MIN) || end.equals(LocalDateTime.MAX)) {
+            return null;
+        }
+        return this.instance.getRollupStore().query(storage, collection, dateattr, column, start, end);
+    }
+
+    /**
+     * Creates the WHERE clause restricting the date range
+     *
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date
+     * @param end End date
+     * @return WHERE clause with leading space or empty string if any of the
+     * parameters is missing
+     */
+    private static String dateCondition(String dateattr, LocalDateTime start, LocalDateTime end) {
+        if (dateattr == null || start == null || end == null) {
+            return "";
+        }
+        return " WHERE \"" + dateattr + "\" >= '" + start + "' AND \"" + dateattr + "\" <= '" + end + "'";
+    }
+
+    /**
+     * Reads the names of referenced tables from a column and returns those
+     * that exist in the storage.
+     *
+     * @param con Database connection to use
+     * @param collection Collection name that contains the reference column
+     * @param storage Schema name
+     * @param refColumn Column containing referenced table names
+     * @return Names of existing referenced tables
+     * @throws SQLException
+     * @throws SmartDataAccessorException if there are no existing referenced
+     * tables
+     */
+    private List<String> fetchReferencedTables(Connection con, String collection, String storage, String refColumn) throws SQLException, SmartDataAccessorException {
+        List<String> refTables = new ArrayList<>();
+        String refSql = "SELECT DISTINCT \"" + refColumn + "\" FROM \"" + storage + "\".\"" + collection + "\"";
+        try (PreparedStatement ps = con.prepareStatement(refSql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String refName = rs.getString(1);
+                if (refName != null && !refName.isBlank()) {
+                    refTables.add(refName.trim());
                 }
+            }
+        }
+
+        if (refTables.isEmpty()) {
+            throw new SmartDataAccessorException("No referenced tables found in column >" + refColumn + "< of collection >" + collection + "<");
+        }
+
+        List<String> existingTables = new ArrayList<>();
+        Set<String> dbTables = this.getCatalogCache().getTables(storage);
+        for (String t : refTables) {
+            if (dbTables.contains(t)) {
+                existingTables.add(t);
+            } else {
+                System.out.println("[SmartDataAccessor] Skipping missing referenced table: " + t);
+            }
+        }
+
+        if (existingTables.isEmpty()) {
+            throw new SmartDataAccessorException("No existing referenced tables found in schema >" + storage + "<");
+        }
+        return existingTables;
+    }
 
-                // Datumsfilter nur bei exact-Zählung
-                if (exact && dateattr != null && start != null && end != null) {
-                    sql = "SELECT COUNT(*) FROM \"" + storage + "\".\"" + table + "\" WHERE \"" + dateattr + "\" >= '" + start + "' AND \"" + dateattr + "\" <= '" + end + "'";
+    /**
+     * Counts the distinct values of a column. The exact count is calculated
+     * with COUNT(DISTINCT). The approximate count streams the values into a
+     * HyperLogLog sketch (precision configured by hll.precision). When a
+     * reference column is given, the values of all referenced tables are
+     * counted, approximate sketches per table are merged.
+     *
+     * @param smartdataurl URL of smartdata (e.g.
+     * http://localhost:8080/SmartData)
+     * @param collection Collections name (Tablename)
+     * @param storage Storage name (Schemaname)
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date (optional)
+     * @param end End date (optional)
+     * @param column Name of the column to count distinct values from
+     * @param approximate If true estimate with HyperLogLog
+     * @param refColumn Column containing referenced table names (optional)
+     * @return Number of distinct values
+     * @throws SmartDataAccessorException
+     */
+    public long fetchDistinctCount(String smartdataurl, String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, String column, boolean approximate, String refColumn) throws SmartDataAccessorException {
+        List<String> tables = List.of(collection);
+        if (refColumn != null) {
+            Connection con = this.getConnection();
+            if (con == null) {
+                throw new SmartDataAccessorException("No database connection available for fetchDistinctCount with reference.");
+            }
+            try {
+                tables = this.fetchReferencedTables(con, collection, storage, refColumn);
+            } catch (SQLException ex) {
+                throw new SmartDataAccessorException("SQL error while fetching referenced tables: " + ex.getLocalizedMessage());
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    throw new SmartDataAccessorException("Could not close DB connection. " + ex.getLocalizedMessage());
                 }
+            }
+        }
 
-                try (PreparedStatement ps = con.prepareStatement(sql);
-                     ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        totalCount += rs.getInt(1);
+        if (approximate) {
+            int precision = this.instance != null ? this.instance.getIntProperty("hll.precision", HyperLogLog.DEFAULT_PRECISION) : HyperLogLog.DEFAULT_PRECISION;
+            HyperLogLog hll;
+            try {
+                hll = new HyperLogLog(precision);
+            } catch (IllegalArgumentException ex) {
+                throw new SmartDataAccessorException(ex.getLocalizedMessage());
+            }
+            if (refColumn != null) {
+                // Referenced tables are sketched concurrently and merged
+                int fetchSize = this.instance != null ? this.instance.getIntProperty("fetchsize", DEFAULT_FETCH_SIZE) : DEFAULT_FETCH_SIZE;
+                List<HyperLogLog> sketches = this.createTableFanOut().run(tables, (tableCon, table) -> {
+                    HyperLogLog tableHll = hll.newEmpty();
+                    String sql = "SELECT \"" + column + "\"::text FROM \"" + storage + "\".\"" + table + "\"" + dateCondition(dateattr, start, end);
+                    boolean autoCommit = tableCon.getAutoCommit();
+                    // Cursor based fetching needs a transaction
+                    tableCon.setAutoCommit(false);
+                    try (PreparedStatement ps = tableCon.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        ps.setFetchSize(fetchSize);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                tableHll.add(rs.getString(1));
+                            }
+                        }
+                    } finally {
+                        tableCon.rollback();
+                        tableCon.setAutoCommit(autoCommit);
                     }
+                    return tableHll;
+                });
+                for (HyperLogLog curSketch : sketches) {
+                    hll.merge(curSketch);
                 }
+            } else {
+                this.sketchDistinct(smartdataurl, collection, storage, dateattr, start, end, column, hll);
             }
+            return hll.estimate();
+        }
 
-            return totalCount;
-
-        } catch (SQLException ex) {
-            throw new SmartDataAccessorException("SQL error while fetching count by reference: " + ex.getLocalizedMessage());
-        } finally {
-            try {
-                con.close();
+        // If available use local direct db access
+        Connection con = this.getConnection();
+        if (con != null) {
+            StringBuilder sql = new StringBuilder("SELECT COUNT(DISTINCT \"").append(column).append("\") FROM (");
+            for (int i = 0; i < tables.size(); i++) {
+                if (i > 0) {
+                    sql.append(" UNION ALL ");
+                }
+                sql.append("SELECT \"").append(column).append("\" FROM \"")
+                        .append(storage).append("\".\"").append(tables.get(i)).append("\"");
+                if (dateattr != null && start != null && end != null) {
+                    sql.append(" WHERE \"").append(dateattr).append("\" >= '").append(start)
+                            .append("' AND \"").append(dateattr).append("\" <= '").append(end).append("'");
+                }
+            }
+            sql.append(") AS all_values");
+            try (PreparedStatement ps = con.prepareStatement(sql.toString());
+                    ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
             } catch (SQLException ex) {
-                throw new SmartDataAccessorException("Could not close DB connection. " + ex.getLocalizedMessage());
+                throw new SmartDataAccessorException("Could not get distinct count from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
+                }
             }
         }
+
+        // Exact distinct count over the SmartData API
+        Set<String> values = new HashSet<>();
+        this.streamData(smartdataurl, collection, storage, column, null, dateattr, start, end, null, record -> {
+            String value = distinctKey(record.get(column));
+            if (value != null) {
+                values.add(value);
+            }
+        });
+        return values.size();
+    }
+
+    /**
+     * Streams the values of a column into the given HyperLogLog sketch
+     *
+     * @return The given sketch
+     */
+    private HyperLogLog sketchDistinct(String smartdataurl, String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, String column, HyperLogLog hll) throws SmartDataAccessorException {
+        this.streamData(smartdataurl, collection, storage, column, null, dateattr, start, end, null, record -> {
+            hll.add(distinctKey(record.get(column)));
+        });
+        return hll;
+    }
+
+    /**
+     * Gets the value used to decide if two json values are distinct
+     *
+     * @param value Json value
+     * @return String representation or null for missing and null values
+     */
+    private static String distinctKey(JsonValue value) {
+        if (value == null || value == JsonValue.NULL) {
+            return null;
+        }
+        if (value instanceof JsonString str) {
+            return str.getString();
+        }
+        return value.toString();
     }
 
     /**
@@ -335,23 +670,8 @@ public class SmartDataAccessor {
         }
 
         // Use SmartData API and calculate arithmetic mean
-        List<Double> values = new ArrayList<>();
-
-        String includes = column;
-        String order = column + ",DESC";
-        // Get datasets
-        JsonArray datasets = this.fetchData(smartdataurl, collection, storage, includes, null, dateattr, start, end, order);
-        for (JsonNumber curVal : datasets.getValuesAs(JsonNumber.class)) {
-            values.add(curVal.bigDecimalValue().doubleValue());
-        }
-
-        double sum = 0.0;
-        for (double value : values) {
-            sum += value;
-        }
-        double average = values.isEmpty() ? 0.0 : sum / values.size();
-
-        return average;
+        StatisticAccumulator acc = this.accumulateColumn(smartdataurl, collection, storage, column, null, dateattr, start, end);
+        return acc.getCount() == 0 ? 0.0 : acc.getMean();
     }
 
     /**
@@ -400,30 +720,8 @@ public class SmartDataAccessor {
         }
 
         // use SmartData API
-        List<Double> values = new ArrayList<>();
-
-        String includes = column;
-        String order = column + ",DESC";
-        // Get datasets
-        JsonArray datasets = this.fetchData(smartdataurl, collection, storage, includes, null, dateattr, start, end, order);
-        for (JsonNumber curVal : datasets.getValuesAs(JsonNumber.class)) {
-            values.add(curVal.bigDecimalValue().doubleValue());
-        }
-
-        // Calculate standard deviation
-        double sum = 0.0;
-        for (double value : values) {
-            sum += value;
-        }
-        double mean = values.isEmpty() ? 0.0 : sum / values.size();
-
-        double varianceSum = 0.0;
-        for (double value : values) {
-            varianceSum += Math.pow(value - mean, 2);
-        }
-        double standardDeviation = values.isEmpty() ? 0.0 : Math.sqrt(varianceSum / values.size());
-
-        return standardDeviation;
+        StatisticAccumulator acc = this.accumulateColumn(smartdataurl, collection, storage, column, null, dateattr, start, end);
+        return acc.getCount() == 0 ? 0.0 : acc.getPopulationStdDeviation();
     }
 
     /**
@@ -456,13 +754,13 @@ public class SmartDataAccessor {
                 ResultSet resultSet = preparedStatement.executeQuery();
 
                 // Ergebnis verarbeiten
-                int count = 0;
+                double median = 0.0;
                 if (resultSet.next()) {
-                    count = resultSet.getInt(1);
+                    median = resultSet.getDouble(1);
                 }
                 resultSet.close();
                 preparedStatement.close();
-                return count;
+                return median;
             } catch (Exception ex) {
                 throw new SmartDataAccessorException("Could not get data from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
             } finally {
@@ -475,26 +773,141 @@ public class SmartDataAccessor {
         }
 
         // Folowing code uses the SmartData API for getting the data and calculates the median itself.
-        List<Double> values = new ArrayList<>();
-
-        String includes = column;
-        String order = column + ",DESC";
-        // Get datasets
-        JsonArray datasets = this.fetchData(smartdataurl, collection, storage, includes, null, dateattr, start, end, order);
-        for (JsonNumber curVal : datasets.getValuesAs(JsonNumber.class)) {
-            values.add(curVal.bigDecimalValue().doubleValue());
-        }
-        // Median berechnen
-        double median;
-        int size = values.size();
-        if (size % 2 == 0) {
-            // Durchschnitt der zwei mittleren Werte bei gerader Anzahl
-            median = (values.get(size / 2 - 1) + values.get(size / 2)) / 2.0;
-        } else {
-            // Mittlerer Wert bei ungerader Anzahl
-            median = values.get(size / 2);
+        double median = this.fetchPercentiles(smartdataurl, collection, storage, dateattr, start, end, column, new double[]{0.5}, false, null)[0];
+        return Double.isNaN(median) ? 0.0 : median;
+    }
+
+    /**
+     * Calculates multiple quantiles of a column. Exact quantiles are
+     * calculated by the database with one percentile_cont call. Approximate
+     * quantiles are calculated from a QuantileSketch built in one streaming
+     * pass with constant memory.
+     *
+     * @param smartdataurl URL of smartdata (e.g.
+     * http://localhost:8080/SmartData)
+     * @param collection Collections name (Tablename)
+     * @param storage Storage name (Schemaname)
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date of datasets used for calculation
+     * @param end End date of datasets used for calculation
+     * @param column Name of column to calculate the quantiles from
+     * @param quantiles Quantiles between 0 and 1
+     * @param approximate If true a sketch is used instead of exact calculation
+     * @param epsilon Rank error bound of the sketch, null for configured
+     * default (quantile.epsilon)
+     * @return Values at the quantiles in the same order, NaN if there are no
+     * values
+     * @throws SmartDataAccessorException
+     */
+    public double[] fetchPercentiles(String smartdataurl, String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, String column, double[] quantiles, boolean approximate, Double epsilon) throws SmartDataAccessorException {
+        for (double curQuantile : quantiles) {
+            if (!(curQuantile >= 0 && curQuantile <= 1)) {
+                throw new SmartDataAccessorException("Quantile >" + curQuantile + "< is not between 0 and 1.");
+            }
+        }
+
+        if (approximate) {
+            if (epsilon == null) {
+                epsilon = this.instance != null ? this.instance.getDoubleProperty("quantile.epsilon", DEFAULT_QUANTILE_EPSILON) : DEFAULT_QUANTILE_EPSILON;
+            }
+            QuantileSketch sketch;
+            try {
+                sketch = new QuantileSketch(epsilon);
+            } catch (IllegalArgumentException ex) {
+                throw new SmartDataAccessorException(ex.getLocalizedMessage());
+            }
+            this.streamData(smartdataurl, collection, storage, column, null, dateattr, start, end, null, record -> {
+                JsonValue value = record.get(column);
+                if (value instanceof JsonNumber num) {
+                    sketch.add(num.doubleValue());
+                }
+            });
+            return sketch.getQuantiles(quantiles);
         }
-        return median;
+
+        double[] result = new double[quantiles.length];
+        Arrays.fill(result, Double.NaN);
+        // If available use local direct db access
+        Connection con = this.getConnection();
+        if (con != null) {
+            StringBuilder sql = new StringBuilder("SELECT PERCENTILE_CONT(ARRAY[");
+            for (int i = 0; i < quantiles.length; i++) {
+                if (i > 0) {
+                    sql.append(",");
+                }
+                sql.append(quantiles[i]);
+            }
+            sql.append("]::float8[]) WITHIN GROUP (ORDER BY \"").append(column).append("\") FROM \"")
+                    .append(storage).append("\".\"").append(collection).append("\"");
+            if (dateattr != null && start != null && end != null) {
+                sql.append(" WHERE \"").append(dateattr).append("\" >= '").append(start)
+                        .append("' AND \"").append(dateattr).append("\" <= '").append(end).append("'");
+            }
+            try (PreparedStatement ps = con.prepareStatement(sql.toString());
+                    ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    Array values = rs.getArray(1);
+                    if (values != null) {
+                        Object[] arr = (Object[]) values.getArray();
+                        for (int i = 0; i < arr.length && i < result.length; i++) {
+                            if (arr[i] != null) {
+                                result[i] = ((Number) arr[i]).doubleValue();
+                            }
+                        }
+                        values.free();
+                    }
+                }
+                return result;
+            } catch (SQLException ex) {
+                throw new SmartDataAccessorException("Could not get percentiles from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
+                }
+            }
+        }
+
+        // Exact quantiles over the SmartData API need all values once
+        double[][] values = {new double[1024]};
+        int[] count = {0};
+        this.streamData(smartdataurl, collection, storage, column, null, dateattr, start, end, null, record -> {
+            JsonValue value = record.get(column);
+            if (value instanceof JsonNumber num) {
+                if (count[0] == values[0].length) {
+                    values[0] = Arrays.copyOf(values[0], values[0].length * 2);
+                }
+                values[0][count[0]++] = num.doubleValue();
+            }
+        });
+        int n = count[0];
+        if (n == 0) {
+            return result;
+        }
+        return exactQuantiles(values[0], n, quantiles);
+    }
+
+    /**
+     * Calculates quantiles with linear interpolation like percentile_cont.
+     * Used for all exact quantiles calculated from fetched values, so that
+     * they match each other.
+     *
+     * @param values Values, the first n are sorted in place
+     * @param n Number of values used (must be greater than 0)
+     * @param quantiles Quantiles between 0 and 1
+     * @return Values of the quantiles in order of the requested quantiles
+     */
+    private static double[] exactQuantiles(double[] values, int n, double[] quantiles) {
+        Arrays.sort(values, 0, n);
+        double[] result = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            double pos = quantiles[i] * (n - 1);
+            int lower = (int) Math.floor(pos);
+            int upper = Math.min(lower + 1, n - 1);
+            result[i] = values[lower] + (pos - lower) * (values[upper] - values[lower]);
+        }
+        return result;
     }
 
     /**
@@ -558,22 +971,8 @@ public class SmartDataAccessor {
         // Note request URI for documentation
         this.smartdataRequest = webTarget.getUri().toString();
 
-        Response response = webTarget.request(MediaType.APPLICATION_JSON).get();
-        String responseText = response.readEntity(String.class);
-        if (Response.Status.OK.getStatusCode() == response.getStatus()) {
-            JsonParser parser = Json.createParser(new StringReader(responseText));
-            parser.next();
-            JsonArray records = parser.getObject().getJsonArray("records");
-            if (records == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >records<");
-            }
-            JsonObject cobj = records.getJsonObject(0);
-            if (cobj == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >data<");
-            }
-            return cobj.getInt("count");
-        }
-        throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() + "< returned status: " + response.getStatus());
+        JsonObject cobj = this.fetchFirstRecord(webTarget);
+        return cobj.getInt("count");
 
     }
 
@@ -634,26 +1033,241 @@ public class SmartDataAccessor {
             webTarget = webTarget.queryParam("filter", dateattr + ",lt," + end);
         }
 
-        // Note request URI for documentation
-        this.smartdataRequest = webTarget.getUri().toString();
-
-        Response response = webTarget.request(MediaType.APPLICATION_JSON).get();
-        String responseText = response.readEntity(String.class);
-        if (Response.Status.OK.getStatusCode() == response.getStatus()) {
-            JsonParser parser = Json.createParser(new StringReader(responseText));
-            parser.next();
-            JsonArray records = parser.getObject().getJsonArray("records");
-            if (records == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >records<");
-            }
-            JsonObject cobj = records.getJsonObject(0);
-            if (cobj == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >data<");
+        // Note request URI for documentation
+        this.smartdataRequest = webTarget.getUri().toString();
+
+        JsonObject cobj = this.fetchFirstRecord(webTarget);
+        return cobj.getInt("count");
+
+    }
+
+    /**
+     * Streams the values of a numeric column from the SmartData API into a
+     * StatisticAccumulator. Values are not kept in memory.
+     *
+     * @param smartdataurl URL of smartdata
+     * @param collection Collections name (Tablename)
+     * @param storage Storage name (Schemaname)
+     * @param column Name of the column to accumulate
+     * @param filters Filters for the SmartData API (optional)
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date (optional)
+     * @param end End date (optional)
+     * @return Accumulator holding the columns statistics
+     * @throws SmartDataAccessorException
+     */
+    private StatisticAccumulator accumulateColumn(String smartdataurl, String collection, String storage, String column, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end) throws SmartDataAccessorException {
+        StatisticAccumulator acc = new StatisticAccumulator();
+        this.streamData(smartdataurl, collection, storage, column, filters, dateattr, start, end, null, record -> {
+            JsonValue value = record.get(column);
+            if (value instanceof JsonNumber num) {
+                acc.add(num.doubleValue());
+            }
+        });
+        return acc;
+    }
+
+    /**
+     * Calculates multiple aggregates of a column with one query. Supported
+     * aggregates are count, sum, min, max, mean, stddev and median.
+     *
+     * @param smartdataurl URL of smartdata (e.g.
+     * http://localhost:8080/SmartData)
+     * @param collection Collections name (Tablename)
+     * @param storage Storage name (Schemaname)
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date of datasets used for calculation
+     * @param end End date of datasets used for calculation
+     * @param column Name of column to calculate the aggregates from
+     * @param aggregates Names of the aggregates to calculate
+     * @return Map of aggregate name to value, aggregates without value (no
+     * datasets) are missing
+     * @throws SmartDataAccessorException
+     */
+    public Map<String, Number> fetchStats(String smartdataurl, String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, String column, Collection<String> aggregates) throws SmartDataAccessorException {
+        return this.fetchStats(smartdataurl, collection, storage, dateattr, start, end, Map.of(column, aggregates)).get(column);
+    }
+
+    /**
+     * Calculates aggregates of multiple columns of one collection and range
+     * with one scan. Supported aggregates are count, sum, min, max, mean,
+     * stddev and median. The column RollupStore.COUNT_ALL only supports count
+     * and counts all datasets.
+     *
+     * @param smartdataurl URL of smartdata (e.g.
+     * http://localhost:8080/SmartData)
+     * @param collection Collections name (Tablename)
+     * @param storage Storage name (Schemaname)
+     * @param dateattr Name of the attribute that holds date information
+     * @param start Start date of datasets used for calculation
+     * @param end End date of datasets used for calculation
+     * @param columnAggregates Names of the aggregates to calculate per column
+     * @return Map of column name to map of aggregate name to value,
+     * aggregates without value (no datasets) are missing
+     * @throws SmartDataAccessorException
+     */
+    public Map<String, Map<String, Number>> fetchStats(String smartdataurl, String collection, String storage, String dateattr, LocalDateTime start, LocalDateTime end, Map<String, ? extends Collection<String>> columnAggregates) throws SmartDataAccessorException {
+        Map<String, List<String>> columnAggs = new LinkedHashMap<>();
+        Map<String, Map<String, Number>> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> curEntry : columnAggregates.entrySet()) {
+            for (String curAggregate : curEntry.getValue()) {
+                if (!STAT_AGGREGATES.contains(curAggregate)) {
+                    throw new SmartDataAccessorException("Aggregate >" + curAggregate + "< is not supported. Supported are: " + STAT_AGGREGATES);
+                }
+                if (curEntry.getKey().equals(RollupStore.COUNT_ALL) && !curAggregate.equals("count")) {
+                    throw new SmartDataAccessorException("Aggregate >" + curAggregate + "< needs a column.");
+                }
+            }
+            stats.put(curEntry.getKey(), new LinkedHashMap<>());
+            if (!curEntry.getValue().isEmpty()) {
+                columnAggs.put(curEntry.getKey(), new ArrayList<>(new LinkedHashSet<>(curEntry.getValue())));
+            }
+        }
+
+        // Ranges are answered from rollups if enabled and all aggregates can be combined from buckets
+        for (Iterator<Map.Entry<String, List<String>>> it = columnAggs.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, List<String>> curEntry = it.next();
+            if (curEntry.getValue().contains("median")) {
+                continue;
+            }
+            RollupStats rollup = this.fetchRollup(collection, storage, dateattr, start, end, curEntry.getKey());
+            if (rollup == null) {
+                continue;
+            }
+            Map<String, Number> columnStats = stats.get(curEntry.getKey());
+            long n = rollup.getCount();
+            for (String curAggregate : curEntry.getValue()) {
+                if (curAggregate.equals("count")) {
+                    columnStats.put("count", n);
+                    continue;
+                }
+                if (n == 0 || (curAggregate.equals("stddev") && n < 2)) {
+                    continue;
+                }
+                switch (curAggregate) {
+                    case "sum" -> columnStats.put("sum", rollup.getSum());
+                    case "min" -> columnStats.put("min", rollup.getMin());
+                    case "max" -> columnStats.put("max", rollup.getMax());
+                    case "mean" -> columnStats.put("mean", rollup.getMean());
+                    case "stddev" -> columnStats.put("stddev", rollup.getSampleStdDeviation());
+                }
+            }
+            it.remove();
+        }
+        if (columnAggs.isEmpty()) {
+            return stats;
+        }
+
+        // If available use local direct db access
+        Connection con = this.getConnection();
+        if (con != null) {
+            StringBuilder sql = new StringBuilder("SELECT ");
+            boolean first = true;
+            for (Map.Entry<String, List<String>> curEntry : columnAggs.entrySet()) {
+                String quotedCol = curEntry.getKey().equals(RollupStore.COUNT_ALL) ? "*" : "\"" + curEntry.getKey() + "\"";
+                for (String curAggregate : curEntry.getValue()) {
+                    if (!first) {
+                        sql.append(", ");
+                    }
+                    first = false;
+                    switch (curAggregate) {
+                        case "count" -> sql.append("COUNT(").append(quotedCol).append(")");
+                        case "sum" -> sql.append("SUM(").append(quotedCol).append(")");
+                        case "min" -> sql.append("MIN(").append(quotedCol).append(")");
+                        case "max" -> sql.append("MAX(").append(quotedCol).append(")");
+                        case "mean" -> sql.append("AVG(").append(quotedCol).append(")");
+                        case "stddev" -> sql.append("STDDEV(").append(quotedCol).append(")");
+                        case "median" -> sql.append("PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY ").append(quotedCol).append(")");
+                    }
+                }
+            }
+            sql.append(" FROM \"").append(storage).append("\".\"").append(collection).append("\"");
+            sql.append(dateCondition(dateattr, start, end));
+            try (PreparedStatement ps = con.prepareStatement(sql.toString());
+                    ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    int pos = 1;
+                    for (Map.Entry<String, List<String>> curEntry : columnAggs.entrySet()) {
+                        Map<String, Number> columnStats = stats.get(curEntry.getKey());
+                        for (String curAggregate : curEntry.getValue()) {
+                            if (curAggregate.equals("count")) {
+                                columnStats.put("count", rs.getLong(pos++));
+                                continue;
+                            }
+                            double value = rs.getDouble(pos++);
+                            if (!rs.wasNull()) {
+                                columnStats.put(curAggregate, value);
+                            }
+                        }
+                    }
+                }
+                return stats;
+            } catch (SQLException ex) {
+                throw new SmartDataAccessorException("Could not get statistics from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
+                }
+            }
+        }
+
+        // Use SmartData API and calculate all aggregates in one pass
+        List<String> columns = new ArrayList<>(columnAggs.keySet());
+        columns.remove(RollupStore.COUNT_ALL);
+        StatisticAccumulator[] accs = new StatisticAccumulator[columns.size()];
+        // Median needs all values, they are only kept if requested
+        double[][] values = new double[columns.size()][];
+        for (int i = 0; i < accs.length; i++) {
+            accs[i] = new StatisticAccumulator();
+            values[i] = new double[columnAggs.get(columns.get(i)).contains("median") ? 1024 : 0];
+        }
+        String includes = columns.isEmpty() ? null : String.join(",", columns);
+        long all = this.streamData(smartdataurl, collection, storage, includes, null, dateattr, start, end, null, record -> {
+            for (int i = 0; i < accs.length; i++) {
+                JsonNumber num = record.getJsonNumber(columns.get(i));
+                if (num == null) {
+                    continue;
+                }
+                double value = num.doubleValue();
+                if (values[i].length > 0) {
+                    int pos = (int) accs[i].getCount();
+                    if (pos == values[i].length) {
+                        values[i] = Arrays.copyOf(values[i], values[i].length * 2);
+                    }
+                    values[i][pos] = value;
+                }
+                accs[i].add(value);
             }
-            return cobj.getInt("count");
+        });
+        if (columnAggs.containsKey(RollupStore.COUNT_ALL)) {
+            stats.get(RollupStore.COUNT_ALL).put("count", all);
         }
-        throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() + "< returned status: " + response.getStatus());
 
+        for (int i = 0; i < accs.length; i++) {
+            StatisticAccumulator acc = accs[i];
+            Map<String, Number> columnStats = stats.get(columns.get(i));
+            long n = acc.getCount();
+            for (String curAggregate : columnAggs.get(columns.get(i))) {
+                if (curAggregate.equals("count")) {
+                    columnStats.put("count", n);
+                    continue;
+                }
+                if (n == 0 || (curAggregate.equals("stddev") && n < 2)) {
+                    continue;
+                }
+                switch (curAggregate) {
+                    case "sum" -> columnStats.put("sum", acc.getSum());
+                    case "min" -> columnStats.put("min", acc.getMin());
+                    case "max" -> columnStats.put("max", acc.getMax());
+                    case "mean" -> columnStats.put("mean", acc.getMean());
+                    case "stddev" -> columnStats.put("stddev", acc.getSampleStdDeviation());
+                    case "median" -> columnStats.put("median", exactQuantiles(values[i], (int) n, new double[]{0.5})[0]);
+                }
+            }
+        }
+        return stats;
     }
 
     /**
@@ -669,107 +1283,253 @@ public class SmartDataAccessor {
      * @param start Startdate to look at
      * @param end Enddate to look at
      * @param order Attribute name to order by
-     * @param limit Number of datasets to fetch
      * @return JSON with available data
      * @throws de.smartdata.lyser.data.SmartDataAccessorException
      */
     public JsonArray fetchData(String smartdataurl, String collection, String storage, String includes, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order) throws SmartDataAccessorException {
+        return this.fetchData(smartdataurl, collection, storage, includes, filters, dateattr, start, end, order, null);
+    }
 
-        // Local direct db access
-        Connection con = this.getConnection();
-        Object limit = null;
-        if (con != null && filters == null) {
-            if (includes == null) {
-                includes = "*";
+    /**
+     * Get data from the SmartData and return it as JSON
+     *
+     * @param smartdataurl SmartDatas URL
+     * @param collection Collections name
+     * @param storage Storages name
+     * @param includes List of attributes that should be returned
+     * @param filters Any filter statement accepted by SmartData
+     * @param dateattr Attribute that stores date information (if start and end
+     * should be used)
+     * @param start Startdate to look at
+     * @param end Enddate to look at
+     * @param order Attribute name to order by
+     * @param limit Number of datasets to fetch (null for all)
+     * @return JSON with available data
+     * @throws de.smartdata.lyser.data.SmartDataAccessorException
+     */
+    public JsonArray fetchData(String smartdataurl, String collection, String storage, String includes, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, Long limit) throws SmartDataAccessorException {
+        JsonArrayBuilder newdataarr = Json.createArrayBuilder();
+        try (RecordCursor cursor = this.openRecordCursor(smartdataurl, collection, storage, includes, filters, dateattr, start, end, order, limit)) {
+            while (cursor.next()) {
+                newdataarr.add(cursor.get());
             }
-            try {
-                // SQL-Abfrage mit einem Platzhalter für die Tabelle
-                String sql = "SELECT " + includes + " FROM \"" + storage + "\".\"" + collection + "\"";
-                if (dateattr != null && start != null && end != null) {
-                    sql += " WHERE " + dateattr + " >= '" + start + "' AND " + dateattr + " <= '" + end + "'";
-                }
-                if (order != null) {
-                    sql += " ORDER BY " + order.replace(',', ' ');
-                }
-                if (limit != null) {
-                    sql += " LIMIT " + limit;
+        }
+        return newdataarr.build();
+    }
+
+    /**
+     * Get data from the SmartData and deliver it dataset by dataset to the
+     * consumer. When the database is locally available a server side cursor
+     * is used, so memory useage does not depend on the size of the time range.
+     *
+     * @param smartdataurl SmartDatas URL
+     * @param collection Collections name
+     * @param storage Storages name
+     * @param includes List of attributes that should be returned
+     * @param filters Any filter statement accepted by SmartData
+     * @param dateattr Attribute that stores date information (if start and end
+     * should be used)
+     * @param start Startdate to look at
+     * @param end Enddate to look at
+     * @param order Attribute name to order by
+     * @param consumer Consumer receiving the datasets
+     * @return Number of delivered datasets
+     * @throws de.smartdata.lyser.data.SmartDataAccessorException
+     */
+    public long streamData(String smartdataurl, String collection, String storage, String includes, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, RecordConsumer consumer) throws SmartDataAccessorException {
+        long count = 0;
+        try (RecordCursor cursor = this.openRecordCursor(smartdataurl, collection, storage, includes, filters, dateattr, start, end, order, null)) {
+            while (cursor.next()) {
+                consumer.accept(cursor.get());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fills a columnar dataset with the requested data. Uses the local
+     * database if available, the values are then read directly from the
+     * ResultSet. Otherwise the records of the SmartData API are added while
+     * they are parsed from the response.
+     *
+     * @param smartdataurl SmartDatas URL
+     * @param collection Collections name
+     * @param storage Storages name
+     * @param filters Any filter statement accepted by SmartData
+     * @param dateattr Attribute that stores date information (if start and end
+     * should be used)
+     * @param start Startdate to look at
+     * @param end Enddate to look at
+     * @param order Attribute name to order by
+     * @param dataset Empty dataset describing the columns to fetch
+     * @return The filled dataset
+     * @throws de.smartdata.lyser.data.SmartDataAccessorException
+     */
+    public ColumnarDataset fetchColumnar(String smartdataurl, String collection, String storage, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, ColumnarDataset dataset) throws SmartDataAccessorException {
+        this.fillColumnar(smartdataurl, collection, storage, filters, dateattr, start, end, order, dataset, Integer.MAX_VALUE, null);
+        return dataset;
+    }
+
+    /**
+     * Delivers the requested data in chunks of a columnar dataset. The
+     * dataset is handed to the consumer whenever it holds chunkRows rows and
+     * cleared afterwards, so memory useage does not depend on the size of the
+     * time range.
+     *
+     * @param smartdataurl SmartDatas URL
+     * @param collection Collections name
+     * @param storage Storages name
+     * @param filters Any filter statement accepted by SmartData
+     * @param dateattr Attribute that stores date information (if start and end
+     * should be used)
+     * @param start Startdate to look at
+     * @param end Enddate to look at
+     * @param order Attribute name to order by
+     * @param chunk Empty dataset describing the columns to fetch, reused for
+     * every chunk
+     * @param chunkRows Maximum number of rows per chunk
+     * @param consumer Consumer receiving the chunks
+     * @return Number of delivered rows
+     * @throws de.smartdata.lyser.data.SmartDataAccessorException
+     */
+    public long streamColumnar(String smartdataurl, String collection, String storage, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, ColumnarDataset chunk, int chunkRows, ChunkConsumer consumer) throws SmartDataAccessorException {
+        return this.fillColumnar(smartdataurl, collection, storage, filters, dateattr, start, end, order, chunk, Math.max(1, chunkRows), consumer);
+    }
+
+    /**
+     * Fills the dataset, if a consumer is given it gets the dataset every
+     * chunkRows rows and after the last row
+     */
+    private long fillColumnar(String smartdataurl, String collection, String storage, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, ColumnarDataset dataset, int chunkRows, ChunkConsumer consumer) throws SmartDataAccessorException {
+        long rows = 0;
+        // SmartData filter statements are only supported over the SmartData API
+        Connection con = null;
+        if (filters == null) {
+            con = this.getConnection();
+        }
+        if (con == null) {
+            try (RecordCursor cursor = this.openSmartDataCursor(smartdataurl, collection, storage, dataset.getIncludes(), filters, dateattr, start, end, order, null)) {
+                while (cursor.next()) {
+                    dataset.addRow(cursor.get());
+                    rows++;
+                    if (consumer != null && dataset.size() >= chunkRows) {
+                        consumer.accept(dataset);
+                        dataset.clear();
+                    }
                 }
-                JsonArrayBuilder newdataarr;
-                // Abfrage ausführen
-                try (PreparedStatement preparedStatement = con.prepareStatement(sql)) {
-                    // Abfrage ausführen
-                    ResultSet resultSet = preparedStatement.executeQuery();
-                    // Ergebnis in eine Liste von Maps umwandeln
-                    newdataarr = Json.createArrayBuilder();
-                    while (resultSet.next()) {
-                        JsonObjectBuilder newdataset = Json.createObjectBuilder();
-                        for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
-                            String colName = resultSet.getMetaData().getColumnName(i);
-                            String colType = resultSet.getMetaData().getColumnTypeName(i);
-                            Object val = resultSet.getObject(i);
-
-                            // Null-Werte korrekt behandeln
-                            if (val == null) {
-                                newdataset.addNull(colName);
-                                continue;
-                            }
+            }
+            if (consumer != null && dataset.size() > 0) {
+                consumer.accept(dataset);
+                dataset.clear();
+            }
+            return rows;
+        }
 
-                            switch (colType) {
-                                case "bool", "boolean" -> newdataset.add(colName, resultSet.getBoolean(i));
-                                case "int", "int4" -> newdataset.add(colName, resultSet.getInt(i));
-                                case "int8", "bigserial" -> newdataset.add(colName, resultSet.getLong(i));
-                                case "float", "float4" -> newdataset.add(colName, resultSet.getFloat(i));
-                                case "float8" -> newdataset.add(colName, resultSet.getDouble(i));
-                                case "timestamp" -> {
-                                    Date timestamp = resultSet.getTimestamp(i);
-                                    if (timestamp != null) {
-                                        newdataset.add(colName, timestamp.toString());
-                                    }
-                                }
-                                case "date" -> {
-                                    Date date = resultSet.getDate(i);
-                                    if (date != null) {
-                                        newdataset.add(colName, date.toString());
-                                    }
-                                }
-                                case "varchar" -> {
-                                    String str = resultSet.getString(i);
-                                    if (str != null) {
-                                        newdataset.add(colName, str);
-                                    }
-                                }
-                                default -> System.out.println("Unsupported column type >" + colType + "< used.");
-                            }
+        String sql = "SELECT " + dataset.getSelectList() + " FROM \"" + storage + "\".\"" + collection + "\""
+                + dateCondition(dateattr, start, end);
+        if (order != null) {
+            sql += " ORDER BY " + order.replace(',', ' ');
+        }
+        int fetchSize = this.instance != null ? this.instance.getIntProperty("fetchsize", DEFAULT_FETCH_SIZE) : DEFAULT_FETCH_SIZE;
+        boolean autoCommit = true;
+        try {
+            // Server side cursors are only used outside of autocommit mode
+            autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                pstmt.setFetchSize(fetchSize);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        dataset.addRow(rs);
+                        rows++;
+                        if (consumer != null && dataset.size() >= chunkRows) {
+                            consumer.accept(dataset);
+                            dataset.clear();
                         }
-                        newdataarr.add(newdataset);
                     }
-                    resultSet.close();
                 }
-                String json = newdataarr.build().toString();
-                try (JsonReader reader = Json.createReader(new StringReader(json))) {
-                    // Lese das JSON-Array
-                    JsonArray records = reader.readArray();
-                    return records;
-                } catch (Exception e) {
-                    System.err.println("Fehler beim Parsen des JSON-Strings: " + e.getMessage());
+            }
+            if (consumer != null && dataset.size() > 0) {
+                consumer.accept(dataset);
+                dataset.clear();
+            }
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not get data from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+        } finally {
+            // Only read, so the transaction is always ended with a rollback
+            try (Connection pooled = con) {
+                if (!pooled.getAutoCommit()) {
+                    pooled.rollback();
+                    pooled.setAutoCommit(autoCommit);
                 }
             } catch (SQLException ex) {
-                throw new SmartDataAccessorException("Could not get data from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
-            } finally {
-                try {
-                    con.close();
-                } catch (SQLException ex) {
-                    throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
-                }
+                throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
             }
-        } else if (con != null) {
+        }
+        return rows;
+    }
+
+    /**
+     * Opens a cursor for the requested data. Uses the local database if
+     * available and the SmartData API otherwise.
+     *
+     * @param smartdataurl SmartDatas URL
+     * @param collection Collections name
+     * @param storage Storages name
+     * @param includes List of attributes that should be returned
+     * @param filters Any filter statement accepted by SmartData
+     * @param dateattr Attribute that stores date information (if start and end
+     * should be used)
+     * @param start Startdate to look at
+     * @param end Enddate to look at
+     * @param order Attribute name to order by
+     * @param limit Number of datasets to fetch (null for all)
+     * @return Cursor, must be closed after use
+     * @throws de.smartdata.lyser.data.SmartDataAccessorException
+     */
+    public RecordCursor openRecordCursor(String smartdataurl, String collection, String storage, String includes, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, Long limit) throws SmartDataAccessorException {
+        // SmartData filter statements are only supported over the SmartData API
+        Connection con = null;
+        if (filters == null) {
+            con = this.getConnection();
+        }
+        if (con == null) {
+            return this.openSmartDataCursor(smartdataurl, collection, storage, includes, filters, dateattr, start, end, order, limit);
+        }
+        if (includes == null) {
+            includes = "*";
+        }
+        // SQL-Abfrage mit einem Platzhalter für die Tabelle
+        String sql = "SELECT " + includes + " FROM \"" + storage + "\".\"" + collection + "\"";
+        if (dateattr != null && start != null && end != null) {
+            sql += " WHERE " + dateattr + " >= '" + start + "' AND " + dateattr + " <= '" + end + "'";
+        }
+        if (order != null) {
+            sql += " ORDER BY " + order.replace(',', ' ');
+        }
+        if (limit != null) {
+            sql += " LIMIT " + limit;
+        }
+        int fetchSize = this.instance != null ? this.instance.getIntProperty("fetchsize", DEFAULT_FETCH_SIZE) : DEFAULT_FETCH_SIZE;
+        try {
+            return new JdbcRecordCursor(con, sql, fetchSize);
+        } catch (SQLException ex) {
             try {
                 con.close();
-            } catch (SQLException ex) {
-                throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
+            } catch (SQLException ex1) {
+                throw new SmartDataAccessorException("Could not close db connection. Possible memory leak." + ex1.getLocalizedMessage());
             }
+            throw new SmartDataAccessorException("Could not get data from >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
         }
+    }
 
+    /**
+     * Opens a cursor on a records request to the SmartData API. Bounded time
+     * ranges are split into pages that are requested concurrently, if the
+     * requested order allows to deliver the pages one after another.
+     */
+    private RecordCursor openSmartDataCursor(String smartdataurl, String collection, String storage, String includes, List<String> filters, String dateattr, LocalDateTime start, LocalDateTime end, String order, Long limit) throws SmartDataAccessorException {
         // Get information about file from SmartData
         WebTarget webTarget = WebTargetCreator.createWebTarget(smartdataurl + "/smartdata", "records")
                 .path(collection)
@@ -789,12 +1549,6 @@ public class SmartDataAccessor {
         if (includes != null) {
             webTarget = webTarget.queryParam("includes", includes);
         }
-        if (start != null) {
-            webTarget = webTarget.queryParam("filter", dateattr + ",gt," + start);
-        }
-        if (end != null) {
-            webTarget = webTarget.queryParam("filter", dateattr + ",lt," + end);
-        }
         if (order != null) {
             webTarget = webTarget.queryParam("order", order.replace(" ", ","));
         }
@@ -802,22 +1556,81 @@ public class SmartDataAccessor {
             webTarget = webTarget.queryParam("size", limit);
         }
 
+        List<WebTarget> pages = this.createTimePages(webTarget, dateattr, start, end, order, limit);
+        if (pages != null) {
+            int parallelPages = this.instance != null ? this.instance.getIntProperty("rest.parallelpages", DEFAULT_PARALLEL_PAGES) : DEFAULT_PARALLEL_PAGES;
+            // Note request URI for documentation
+            this.smartdataRequest = pages.get(0).getUri().toString() + " (" + pages.size() + " pages)";
+            return new PagedRestCursor(pages, parallelPages);
+        }
+
+        if (start != null) {
+            webTarget = webTarget.queryParam("filter", dateattr + ",gt," + start);
+        }
+        if (end != null) {
+            webTarget = webTarget.queryParam("filter", dateattr + ",lt," + end);
+        }
+
         // Note request URI for documentation
         this.smartdataRequest = webTarget.getUri().toString();
 
-        Response response = webTarget.request(MediaType.APPLICATION_JSON).get();
-        String responseText = response.readEntity(String.class);
-        if (Response.Status.OK.getStatusCode() == response.getStatus()) {
-            JsonParser parser = Json.createParser(new StringReader(responseText));
-            parser.next();
-            JsonArray records = parser.getObject().getJsonArray("records");
-            if (records == null) {
-                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >records<");
+        return new RestRecordCursor(webTarget, "records");
+    }
+
+    /**
+     * Splits a time range request into pages of subsequent time slices.
+     *
+     * @return Page targets in delivery order or null if the request should
+     * not be paged, e.g. because the range is open
+     */
+    private List<WebTarget> createTimePages(WebTarget webTarget, String dateattr, LocalDateTime start, LocalDateTime end, String order, Long limit) {
+        if (dateattr == null || start == null || end == null || limit != null || !start.isBefore(end)) {
+            return null;
+        }
+        // Open ranges would be split into slices of thousands of years
+        if (start.equals(LocalDateTime.MIN) || end.equals(LocalDateTime.MAX)) {
+            return null;
+        }
+        int pageHours = this.instance != null ? this.instance.getIntProperty("rest.pagehours", DEFAULT_PAGE_HOURS) : DEFAULT_PAGE_HOURS;
+        int maxPages = this.instance != null ? this.instance.getIntProperty("rest.maxpages", DEFAULT_MAX_PAGES) : DEFAULT_MAX_PAGES;
+        if (pageHours <= 0 || maxPages <= 1) {
+            return null;
+        }
+
+        // Pages can only be delivered one after another if ordered by date
+        boolean descending = false;
+        if (order != null) {
+            String[] orderParts = order.trim().split("[ ,]+");
+            if (!orderParts[0].equals(dateattr)) {
+                return null;
+            }
+            descending = orderParts.length > 1 && orderParts[1].equalsIgnoreCase("desc");
+        }
+
+        long rangeSeconds = Duration.between(start, end).getSeconds();
+        long pageSeconds = Math.max(pageHours * 3600L, (rangeSeconds + maxPages - 1) / maxPages);
+        if (pageSeconds >= rangeSeconds) {
+            return null;
+        }
+
+        List<WebTarget> pages = new ArrayList<>();
+        LocalDateTime pageStart = start;
+        while (pageStart.isBefore(end)) {
+            LocalDateTime pageEnd = pageStart.plusSeconds(pageSeconds);
+            if (pageEnd.isAfter(end)) {
+                pageEnd = end;
             }
-            return records;
-        } else {
-            throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() + "< returned status: " + response.getStatus());
+            // Range is exclusive at both ends, pages after the first start inclusive
+            String startOp = pageStart.equals(start) ? ",gt," : ",ge,";
+            pages.add(webTarget
+                    .queryParam("filter", dateattr + startOp + pageStart)
+                    .queryParam("filter", dateattr + ",lt," + pageEnd));
+            pageStart = pageEnd;
         }
+        if (descending) {
+            Collections.reverse(pages);
+        }
+        return pages;
     }
 
     /**
@@ -829,6 +1642,14 @@ public class SmartDataAccessor {
      * @throws de.smartdata.lyser.data.SmartDataAccessorException
      */
     public List<String> fetchCollectons(String smartdataurl, String storage) throws SmartDataAccessorException {
+        // Collection lists change rarely, so they are taken from the catalog cache
+        if (this.instance != null) {
+            return this.instance.getCatalogCache().getCollections(storage, () -> this.requestCollections(smartdataurl, storage));
+        }
+        return this.requestCollections(smartdataurl, storage);
+    }
+
+    private List<String> requestCollections(String smartdataurl, String storage) throws SmartDataAccessorException {
         // Get information about file from SmartData
         WebTarget webTarget = WebTargetCreator.createWebTarget(
                 smartdataurl + "/smartdata", "storage")
@@ -838,23 +1659,13 @@ public class SmartDataAccessor {
         // Note request URI for documentation
         this.smartdataRequest = webTarget.getUri().toString();
 
-        Response response = webTarget.request(MediaType.APPLICATION_JSON).get();
-        String responseText = response.readEntity(String.class);
-        if (Response.Status.OK.getStatusCode() == response.getStatus()) {
-            JsonParser parser = Json.createParser(new StringReader(responseText));
-            parser.next();
-            JsonArray list = parser.getObject().getJsonArray("list");
-            if (list == null) {
-                throw new SmartDataAccessorException("Could not get storages from >" + webTarget.getUri() + "< retuned no >list<");
+        List<String> collections = new ArrayList<>();
+        try (RestRecordCursor cursor = new RestRecordCursor(webTarget, "list")) {
+            while (cursor.next()) {
+                collections.add(cursor.get().getString("name"));
             }
-            List<String> collections = new ArrayList<>();
-            for (JsonValue curVal : list) {
-                collections.add(curVal.asJsonObject().getString("name"));
-            }
-            return collections;
-        } else {
-            throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() + "< returned status: " + responseText);
         }
+        return collections;
     }
 
     /**
@@ -897,6 +1708,22 @@ public class SmartDataAccessor {
         throw new SmartDataAccessorException("Could not get size for >" + smartdataurl + "<: Size fetching is currently not supported for databases accessable only over SmartData.");
     }
 
+    /**
+     * Reads the first dataset of a records request to the SmartData API
+     *
+     * @param webTarget Target to request
+     * @return First dataset
+     * @throws SmartDataAccessorException If there is no dataset
+     */
+    private JsonObject fetchFirstRecord(WebTarget webTarget) throws SmartDataAccessorException {
+        try (RestRecordCursor cursor = new RestRecordCursor(webTarget, "records")) {
+            if (!cursor.next()) {
+                throw new SmartDataAccessorException("Could not get data from >" + webTarget.getUri() + "< retuned no >data<");
+            }
+            return cursor.get();
+        }
+    }
+
     public String getSmartdataRequest() {
         return this.smartdataRequest;
     }
@@ -1001,9 +1828,9 @@ public class SmartDataAccessor {
      * Checks if a given table exists in the specified schema.
      */
     private boolean tableExists(Connection con, String schema, String table) {
-        try (ResultSet rs = con.getMetaData().getTables(null, schema, table, null)) {
-            return rs.next();
-        } catch (SQLException e) {
+        try {
+            return this.getCatalogCache().tableExists(schema, table);
+        } catch (SmartDataAccessorException e) {
             de.ngi.logging.Logger.log("Error checking table existence for " + schema + "." + table + ": " + e.getMessage());
             return false;
         }
@@ -1026,6 +1853,12 @@ public class SmartDataAccessor {
                             LocalDateTime start, LocalDateTime end, String column)
             throws SmartDataAccessorException {
 
+        // Ranges are answered from rollups if enabled
+        RollupStats rollup = this.fetchRollup(collection, storage, dateattr, start, end, column);
+        if (rollup != null) {
+            return rollup.getCount() == 0 ? 0.0 : rollup.getMean();
+        }
+
         Connection con = this.getConnection();
         if (con != null) {
             try {
@@ -1056,16 +1889,7 @@ public class SmartDataAccessor {
         }
 
         // --- Fallback über SmartData REST API ---
-        List<Double> values = new ArrayList<>();
-        String includes = column;
-        String order = column + ",ASC";
-        JsonArray datasets = this.fetchData(smartdataurl, collection, storage, includes, null, dateattr, start, end, order);
-
-        for (JsonNumber curVal : datasets.getValuesAs(JsonNumber.class)) {
-            values.add(curVal.bigDecimalValue().doubleValue());
-        }
-
-        return values.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+        return this.accumulateColumn(smartdataurl, collection, storage, column, null, dateattr, start, end).getMean();
     }
 
     /**
@@ -1091,73 +1915,34 @@ public class SmartDataAccessor {
         if (con == null)
             throw new SmartDataAccessorException("No database connection available for fetchMean with reference.");
 
+        List<String> existingTables;
         try {
-            List<String> refTables = new ArrayList<>();
-            String refSql = "SELECT DISTINCT \"" + refColumn + "\" FROM \"" + storage + "\".\"" + collection + "\"";
-            try (PreparedStatement ps = con.prepareStatement(refSql);
-                 ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String refName = rs.getString(1);
-                    if (refName != null && !refName.isBlank()) {
-                        refTables.add(refName.trim());
-                    }
+            existingTables = this.fetchReferencedTables(con, collection, storage, refColumn);
+
+            // Few tables are calculated with one statement
+            if (existingTables.size() <= this.getRefUnionLimit()) {
+                StringBuilder unionSql = new StringBuilder();
+                unionSql.append("SELECT AVG(\"").append(column).append("\") AS mean FROM (");
+
+                for (int i = 0; i < existingTables.size(); i++) {
+                    String table = existingTables.get(i);
+                    if (i > 0) unionSql.append(" UNION ALL ");
+                    unionSql.append("SELECT \"").append(column).append("\" FROM \"")
+                            .append(storage).append("\".\"").append(table).append("\"")
+                            .append(dateCondition(dateattr, start, end));
                 }
-            }
-
-            if (refTables.isEmpty()) {
-                throw new SmartDataAccessorException("No referenced tables found in column >" + refColumn + "<");
-            }
 
-            List<String> existingTables = new ArrayList<>();
-            String checkSql = "SELECT tablename FROM pg_catalog.pg_tables WHERE schemaname = ?";
-            try (PreparedStatement ps = con.prepareStatement(checkSql)) {
-                ps.setString(1, storage);
-                ResultSet rs = ps.executeQuery();
-                List<String> dbTables = new ArrayList<>();
-                while (rs.next()) {
-                    dbTables.add(rs.getString("tablename"));
-                }
-                rs.close();
+                unionSql.append(") AS all_").append(column);
 
-                for (String t : refTables) {
-                    if (dbTables.contains(t)) {
-                        existingTables.add(t);
+                try (PreparedStatement ps = con.prepareStatement(unionSql.toString());
+                     ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getDouble("mean");
                     } else {
-                        System.out.println("[fetchMean] Skipping missing table: " + t);
+                        return Double.NaN;
                     }
                 }
             }
-
-            if (existingTables.isEmpty()) {
-                throw new SmartDataAccessorException("No existing referenced tables found in schema >" + storage + "<");
-            }
-
-            StringBuilder unionSql = new StringBuilder();
-            unionSql.append("SELECT AVG(\"").append(column).append("\") AS mean FROM (");
-
-            for (int i = 0; i < existingTables.size(); i++) {
-                String table = existingTables.get(i);
-                if (i > 0) unionSql.append(" UNION ALL ");
-                unionSql.append("SELECT \"").append(column).append("\" FROM \"")
-                        .append(storage).append("\".\"").append(table).append("\"");
-
-                if (dateattr != null && start != null && end != null) {
-                    unionSql.append(" WHERE \"").append(dateattr).append("\" >= '").append(start)
-                            .append("' AND \"").append(dateattr).append("\" <= '").append(end).append("'");
-                }
-            }
-
-            unionSql.append(") AS all_").append(column);
-
-            try (PreparedStatement ps = con.prepareStatement(unionSql.toString());
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getDouble("mean");
-                } else {
-                    return Double.NaN;
-                }
-            }
-
         } catch (SQLException ex) {
             throw new SmartDataAccessorException("SQL error while calculating mean by reference: " + ex.getLocalizedMessage());
         } finally {
@@ -1167,6 +1952,22 @@ public class SmartDataAccessor {
                 throw new SmartDataAccessorException("Could not close DB connection. " + ex.getLocalizedMessage());
             }
         }
+
+        // Many tables are calculated concurrently, each table delivers sum and count
+        List<double[]> partials = this.createTableFanOut().run(existingTables, (tableCon, table) -> {
+            String sql = "SELECT SUM(\"" + column + "\"), COUNT(\"" + column + "\") FROM \"" + storage + "\".\"" + table + "\"" + dateCondition(dateattr, start, end);
+            try (PreparedStatement ps = tableCon.prepareStatement(sql);
+                 ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new double[]{rs.getDouble(1), rs.getLong(2)} : new double[]{0, 0};
+            }
+        });
+        double sum = 0;
+        long count = 0;
+        for (double[] curPartial : partials) {
+            sum += curPartial[0];
+            count += (long) curPartial[1];
+        }
+        return count == 0 ? 0.0 : sum / count;
     }
     
     
@@ -1230,43 +2031,12 @@ public class SmartDataAccessor {
         }
 
         // --- Fallback über SmartData REST API ---
-        List<Double> values = new ArrayList<>();
-        String includes = column;
-        String order = column + ",ASC";
-
         List<String> filters = null;
         if (filterColumn != null && filterValue != null) {
             filters = new ArrayList<>();
             filters.add(filterColumn + ",eq," + filterValue); 
         }
-
-        JsonArray datasets = this.fetchData(
-            smartdataurl,
-            collection,
-            storage,
-            includes,
-            filters,  
-            dateattr,
-            start,
-            end,
-            order
-        );
-        
-        for (JsonValue value : datasets) {
-            JsonObject obj = value.asJsonObject();
-            if (obj.containsKey(column)) {
-                try {
-                    JsonNumber num = obj.getJsonNumber(column);
-                    if (num != null) {
-                        values.add(num.doubleValue());
-                    }
-                } catch (Exception e) {
-                    // Ignoriere ungültige Werte
-                }
-            }
-        }
-
-        return values.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+        return this.accumulateColumn(smartdataurl, collection, storage, column, filters, dateattr, start, end).getMean();
     }
     
     /**
@@ -1366,27 +2136,7 @@ public class SmartDataAccessor {
        // Note request URI for documentation
        this.smartdataRequest = webTarget.getUri().toString();
 
-       Response response = webTarget.request(MediaType.APPLICATION_JSON).get();
-       String responseText = response.readEntity(String.class);
-
-       if (Response.Status.OK.getStatusCode() == response.getStatus()) {
-           try (JsonParser parser = Json.createParser(new StringReader(responseText))) {
-               parser.next();
-               JsonArray records = parser.getObject().getJsonArray("records");
-               if (records == null) {
-                   throw new SmartDataAccessorException("Could not get data from >" +
-                       webTarget.getUri() + "< returned no >records<");
-               }
-               JsonObject cobj = records.getJsonObject(0);
-               if (cobj == null) {
-                   throw new SmartDataAccessorException("Could not get data from >" +
-                       webTarget.getUri() + "< returned no >data<");
-               }
-               return cobj.getInt("count");
-           }
-       }
-
-       throw new SmartDataAccessorException("Could not access >" + webTarget.getUri() +
-           "< returned status: " + response.getStatus());
+       JsonObject cobj = this.fetchFirstRecord(webTarget);
+       return cobj.getInt("count");
    }
 }
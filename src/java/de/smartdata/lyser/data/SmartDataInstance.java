@@ -0,0 +1,164 @@
+package de.smartdata.lyser.data;
+
+import de.fhbielefeld.scl.logger.Logger;
+import de.fhbielefeld.scl.logger.message.Message;
+import de.fhbielefeld.scl.logger.message.MessageLevel;
+import de.smartdata.lyser.config.Configuration;
+import de.smartdata.lyser.rollup.RollupStore;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Holds the resolved resources of one SmartData instance: its configuration,
+ * the JNDI name of its connection pool and the DataSource itself. If the
+ * connection pool is not available, the lookup is retried on access with a
+ * growing delay, so that remote only instances keep their catalog cache.
+ *
+ * @author Florian Fehring
+ */
+public class SmartDataInstance {
+
+    public static final int DEFAULT_CATALOG_TTL = 300;
+    // Delay before the first and maximum delay between further attempts to
+    // get an unavailable connection pool
+    private static final long LOOKUP_RETRY_MS = 5000;
+    private static final long LOOKUP_RETRY_MAX_MS = 300000;
+
+    private final String name;
+    private final Configuration conf;
+    private final long confModified;
+    private final String jndi;
+    private volatile DataSource ds = null;
+    private final CatalogCache catalog;
+    private volatile RollupStore rollups = null;
+    private long lookupFailedAt = 0;
+    private long lookupDelay = LOOKUP_RETRY_MS;
+
+    /**
+     * Loads configuration and connection pool for a SmartData instance
+     *
+     * @param name Name of the SmartData instance (last part of its URL)
+     */
+    public SmartDataInstance(String name) {
+        this.name = name;
+        // Load configuration for instance
+        this.conf = new Configuration(name);
+        this.confModified = this.conf.getLastModified();
+        String jndiName = this.conf.getProperty("postgres.jndi");
+        if (jndiName == null) {
+            jndiName = "jdbc/SmartData";
+        }
+        this.jndi = jndiName;
+        // Catalog metadata is kept for catalog.ttl seconds
+        this.catalog = new CatalogCache(null, this.getIntProperty("catalog.ttl", DEFAULT_CATALOG_TTL) * 1000L);
+        this.lookupDataSource();
+    }
+
+    /**
+     * Gets the connection pool from JNDI and creates the resources depending
+     * on it. A failed lookup is logged once and the delay until the next
+     * attempt is doubled.
+     */
+    private synchronized void lookupDataSource() {
+        if (this.ds != null) {
+            return;
+        }
+        try {
+            InitialContext ctx = new InitialContext();
+            DataSource found = (DataSource) ctx.lookup(this.jndi);
+            this.catalog.setDataSource(found);
+            // Rollups are only used if enabled for the instance
+            if ("true".equalsIgnoreCase(this.conf.getProperty("rollup.enabled"))) {
+                String rollupSchema = this.conf.getProperty("rollup.schema");
+                if (rollupSchema == null) {
+                    rollupSchema = "lyser_rollup";
+                }
+                this.rollups = new RollupStore(found, rollupSchema, this.getIntProperty("rollup.latehours", RollupStore.DEFAULT_LATE_HOURS));
+            }
+            this.ds = found;
+        } catch (NamingException ex) {
+            if (this.lookupFailedAt == 0) {
+                Message msg = new Message("", MessageLevel.ERROR, "Could not access connection pool: " + ex.getLocalizedMessage());
+                Logger.addMessage(msg);
+            } else {
+                this.lookupDelay = Math.min(this.lookupDelay * 2, LOOKUP_RETRY_MAX_MS);
+            }
+            this.lookupFailedAt = System.currentTimeMillis();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Configuration getConfiguration() {
+        return conf;
+    }
+
+    public String getJndi() {
+        return jndi;
+    }
+
+    /**
+     * Gets the connection pool of the instance. If it was not available the
+     * lookup is tried again, when the retry delay has passed.
+     *
+     * @return DataSource or null if the connection pool is not available
+     */
+    public DataSource getDataSource() {
+        if (this.ds == null) {
+            synchronized (this) {
+                if (System.currentTimeMillis() - this.lookupFailedAt >= this.lookupDelay) {
+                    this.lookupDataSource();
+                }
+            }
+        }
+        return ds;
+    }
+
+    public CatalogCache getCatalogCache() {
+        return catalog;
+    }
+
+    /**
+     * @return RollupStore of the instance or null if rollups are not enabled
+     */
+    public RollupStore getRollupStore() {
+        this.getDataSource();
+        return rollups;
+    }
+
+    /**
+     * Gets an integer property from the instances configuration
+     *
+     * @param name Name of the property
+     * @param defaultValue Value used if the property is not set or invalid
+     * @return Configured or default value
+     */
+    public int getIntProperty(String name, int defaultValue) {
+        return this.conf.getIntProperty(name, defaultValue);
+    }
+
+    /**
+     * Gets a decimal property from the instances configuration
+     *
+     * @param name Name of the property
+     * @param defaultValue Value used if the property is not set or invalid
+     * @return Configured or default value
+     */
+    public double getDoubleProperty(String name, double defaultValue) {
+        return this.conf.getDoubleProperty(name, defaultValue);
+    }
+
+    /**
+     * Checks if the instance has to be loaded again, because the configuration
+     * file was changed since this instance was loaded. An unavailable
+     * connection pool is retried by getDataSource() instead.
+     *
+     * @return true if the instance should be reloaded
+     */
+    public boolean isOutdated() {
+        return this.conf.getLastModified() != this.confModified;
+    }
+}
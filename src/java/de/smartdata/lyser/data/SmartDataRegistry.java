@@ -0,0 +1,142 @@
+package de.smartdata.lyser.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Application wide registry of SmartData instances. Resolves configuration,
+ * JNDI name and DataSource once per instance instead of on every request and
+ * reloads them when the instances configuration file changes. The number of
+ * registered instances is limited, the least recently checked instance is
+ * dropped when a new one exceeds the limit.
+ *
+ * @author Florian Fehring
+ */
+public class SmartDataRegistry {
+
+    // Minimum time between two checks of a configuration file for changes
+    private static final long CONF_CHECK_INTERVAL_MS = 5000;
+    // Maximum number of registered instances
+    private static final int MAX_INSTANCES = 64;
+
+    private static final SmartDataRegistry INSTANCE = new SmartDataRegistry();
+
+    private final Map<String, SmartDataInstance> instances = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastChecks = new ConcurrentHashMap<>();
+
+    private SmartDataRegistry() {
+
+    }
+
+    public static SmartDataRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the name of the SmartData instance from its URL
+     *
+     * @param smartdataurl URL to SmartData instance
+     * @return Name of the instance
+     */
+    public static String getInstanceName(String smartdataurl) {
+        int lastSlash = smartdataurl.lastIndexOf("/");
+        if (lastSlash >= 0) {
+            return smartdataurl.substring(lastSlash + 1);
+        }
+        return smartdataurl;
+    }
+
+    /**
+     * Gets the key of a SmartData instance. Instances are identified by their
+     * full base URL, so hosts with equally named instances are kept apart.
+     *
+     * @param smartdataurl URL to SmartData instance
+     * @return Absolute URL without surrounding whitespace and trailing
+     * slashes
+     */
+    public static String getInstanceKey(String smartdataurl) {
+        String url = smartdataurl.trim();
+        // Relative URLs point to the local server, like in the resources
+        if (url.startsWith("/")) {
+            url = "http://localhost:8080" + url;
+        }
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url;
+    }
+
+    /**
+     * Gets the resolved resources for a SmartData instance. Loads them on
+     * first access and reloads them if the configuration file was changed.
+     * The configuration is selected by the instances name, caches (e.g. the
+     * catalog) belong to the instance at its URL.
+     *
+     * @param smartdataurl URL to SmartData instance
+     * @return SmartData instance
+     */
+    public SmartDataInstance getSmartDataInstance(String smartdataurl) {
+        String key = getInstanceKey(smartdataurl);
+        long now = System.currentTimeMillis();
+        SmartDataInstance instance = this.instances.computeIfAbsent(key, url -> {
+            this.lastChecks.put(url, now);
+            return new SmartDataInstance(getInstanceName(url));
+        });
+        if (this.instances.size() > MAX_INSTANCES) {
+            this.evictOldest(key);
+        }
+
+        Long lastCheck = this.lastChecks.get(key);
+        if (lastCheck == null || now - lastCheck > CONF_CHECK_INTERVAL_MS) {
+            this.lastChecks.put(key, now);
+            if (instance.isOutdated()) {
+                SmartDataInstance reloaded = new SmartDataInstance(getInstanceName(key));
+                this.instances.put(key, reloaded);
+                instance = reloaded;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Removes the instance that was checked least recently
+     *
+     * @param keep Key of the instance that must not be removed
+     */
+    private void evictOldest(String keep) {
+        String oldest = null;
+        long oldestCheck = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> curEntry : this.lastChecks.entrySet()) {
+            if (!curEntry.getKey().equals(keep) && curEntry.getValue() < oldestCheck) {
+                oldest = curEntry.getKey();
+                oldestCheck = curEntry.getValue();
+            }
+        }
+        if (oldest != null) {
+            this.instances.remove(oldest);
+            this.lastChecks.remove(oldest);
+        }
+    }
+
+    /**
+     * Creates an accessor that uses the registered resources of the instance
+     *
+     * @param smartdataurl URL to SmartData instance
+     * @return SmartDataAccessor for the instance
+     */
+    public SmartDataAccessor createAccessor(String smartdataurl) {
+        return new SmartDataAccessor(this.getSmartDataInstance(smartdataurl));
+    }
+
+    /**
+     * Removes an instance from the registry, so that it is loaded again on
+     * next access.
+     *
+     * @param smartdataurl URL of the SmartData instance
+     */
+    public void invalidate(String smartdataurl) {
+        String key = getInstanceKey(smartdataurl);
+        this.instances.remove(key);
+        this.lastChecks.remove(key);
+    }
+}
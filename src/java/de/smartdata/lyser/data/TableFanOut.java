@@ -0,0 +1,97 @@
+package de.smartdata.lyser.data;
+
+import de.smartdata.lyser.config.ApplicationExecutors;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+
+/**
+ * Runs a query on each of multiple tables concurrently. The tables are
+ * distributed over a bounded number of workers, each worker uses one pooled
+ * connection for all of its tables. Workers run on the applications shared
+ * worker pool. The partial results are returned in the order of the tables,
+ * so the caller can merge them.
+ *
+ * @author Florian Fehring
+ */
+public class TableFanOut {
+
+    /**
+     * Query executed for one table
+     *
+     * @param <T> Type of the partial result
+     */
+    @FunctionalInterface
+    public interface TableQuery<T> {
+
+        T query(Connection con, String table) throws SQLException, SmartDataAccessorException;
+    }
+
+    private final DataSource ds;
+    private final int maxParallel;
+
+    /**
+     * Creates a fan out
+     *
+     * @param ds DataSource to get the connections from
+     * @param maxParallel Maximum number of concurrently used connections
+     */
+    public TableFanOut(DataSource ds, int maxParallel) {
+        this.ds = ds;
+        this.maxParallel = Math.max(1, maxParallel);
+    }
+
+    /**
+     * Executes the query for all tables
+     *
+     * @param <T> Type of the partial results
+     * @param tables Names of the tables
+     * @param query Query to execute per table
+     * @return Partial results in the order of the tables
+     * @throws SmartDataAccessorException if one of the queries fails
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> run(List<String> tables, TableQuery<T> query) throws SmartDataAccessorException {
+        Object[] results = new Object[tables.size()];
+        int workers = Math.min(this.maxParallel, tables.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int firstIndex = w;
+            // Runs on the calling thread if all shared workers are busy
+            futures.add(ApplicationExecutors.getWorkerExecutor().submit(() -> {
+                try (Connection con = this.ds.getConnection()) {
+                    for (int i = firstIndex; i < results.length; i += workers) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return null;
+                        }
+                        results[i] = query.query(con, tables.get(i));
+                    }
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> curFuture : futures) {
+                curFuture.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SmartDataAccessorException("Interrupted while querying referenced tables.");
+        } catch (ExecutionException | CancellationException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            throw new SmartDataAccessorException("Could not query referenced tables: " + cause.getLocalizedMessage());
+        } finally {
+            for (Future<?> curFuture : futures) {
+                curFuture.cancel(true);
+            }
+        }
+        return (List<T>) Arrays.asList(results);
+    }
+}
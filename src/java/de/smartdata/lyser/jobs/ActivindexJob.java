@@ -0,0 +1,215 @@
+package de.smartdata.lyser.jobs;
+
+import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
+import de.smartdata.lyser.cache.QueryFingerprint;
+import de.smartdata.lyser.data.SmartDataAccessor;
+import de.smartdata.lyser.data.SmartDataAccessorException;
+import de.smartdata.lyser.data.SmartDataInstance;
+import de.smartdata.lyser.data.SmartDataRegistry;
+import de.smartdata.lyser.rest.StatisticResource;
+import jakarta.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Job calculating which collections are active (more datasets than the
+ * threshold within the time range) and which are inactive. The result is
+ * stored in the statistic result cache.
+ *
+ * @author Florian Fehring
+ */
+public class ActivindexJob extends Job {
+
+    public static final int DEFAULT_PARALLEL = 8;
+    public static final int DEFAULT_BATCH = 50;
+
+    private String smartdataurl, collections, storage, dateattribute;
+    private String start, end;
+    private int lasthours;
+    private Integer threshold;
+
+    public ActivindexJob(String smartdataurl, String collections, String storage, String dateattribute, String start, String end, int lasthours, Integer threshold) {
+        super("activeindex", createFingerprint(smartdataurl, collections, storage, dateattribute, start, end, lasthours, threshold));
+        this.smartdataurl = smartdataurl;
+        this.collections = collections;
+        this.storage = storage;
+        this.dateattribute = dateattribute;
+        this.start = start;
+        this.end = end;
+        this.lasthours = lasthours;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Creates the fingerprint under which the result is cached
+     *
+     * @return Fingerprint of the activeindex query
+     */
+    public static QueryFingerprint createFingerprint(String smartdataurl, String collections, String storage, String dateattribute, String start, String end, int lasthours, Integer threshold) {
+        return QueryFingerprint.of("statistic/activeindex", smartdataurl)
+                .withSet("collections", collections).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end)
+                .with("lasthours", lasthours).with("threshold", threshold);
+    }
+
+    /**
+     * Gets the number of statements executed at the same time. Configured
+     * by activeindex.parallel for the SmartData instance, should not exceed
+     * the size of its connection pool.
+     *
+     * @return Number of parallel statements
+     */
+    private int getParallel() {
+        SmartDataInstance instance = SmartDataRegistry.getInstance().getSmartDataInstance(this.smartdataurl);
+        return Math.max(1, instance.getIntProperty("activeindex.parallel", DEFAULT_PARALLEL));
+    }
+
+    /**
+     * Gets the number of collections probed with one statement. Configured
+     * by activeindex.batch for the SmartData instance.
+     *
+     * @return Number of collections per statement
+     */
+    private int getBatchSize() {
+        SmartDataInstance instance = SmartDataRegistry.getInstance().getSmartDataInstance(this.smartdataurl);
+        return Math.max(1, instance.getIntProperty("activeindex.batch", DEFAULT_BATCH));
+    }
+
+    @Override
+    protected ResponseObjectBuilder execute() {
+        if (this.smartdataurl.startsWith("/")) {
+            this.smartdataurl = "http://localhost:8080" + this.smartdataurl;
+        }
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(this.smartdataurl);
+
+        LocalDateTime startDT;
+        if (this.start != null) {
+            startDT = LocalDateTime.parse(this.start);
+        } else if (this.lasthours > 0) {
+            startDT = LocalDateTime.now().minusHours(this.lasthours);
+        } else {
+            startDT = LocalDateTime.now().minusDays(30);
+        }
+
+        LocalDateTime endDT;
+        if (this.end != null) {
+            endDT = LocalDateTime.parse(this.end);
+        } else {
+            endDT = LocalDateTime.now();
+        }
+
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+        List<String> colls = new ArrayList<>();
+        if (this.collections != null) {
+            String[] cos = this.collections.split(",");
+            for (int i = 0; i < cos.length; i++) {
+                colls.add(cos[i]);
+            }
+        } else {
+            try {
+                colls = new ArrayList<>(acc.fetchCollectons(this.smartdataurl, this.storage));
+            } catch (SmartDataAccessorException ex) {
+                rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+                rob.addErrorMessage("Could not get collections: " + ex.getLocalizedMessage());
+                rob.addException(ex);
+                // Failures are not cached, so the next request tries again
+                return rob;
+            }
+        }
+
+        if (this.threshold == null) {
+            this.threshold = 0;
+        }
+
+        // Exclude tables from SmartMonitoring
+        colls.removeIf(curCol -> curCol.startsWith("tbl_"));
+
+        // Probe collections in batches, each worker probes every n-th batch
+        final LocalDateTime rangeStart = startDT;
+        final LocalDateTime rangeEnd = endDT;
+        final List<String> counted = colls;
+        Boolean[] activities = new Boolean[counted.size()];
+        String[] warnings = new String[counted.size()];
+        AtomicInteger processed = new AtomicInteger();
+        this.setProgress(0, counted.size());
+        int batchSize = this.getBatchSize();
+        int batches = (counted.size() + batchSize - 1) / batchSize;
+        int workers = Math.min(this.getParallel(), batches);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int firstBatch = w;
+            futures.add(JobManager.getInstance().getWorkerExecutor().submit(() -> {
+                for (int b = firstBatch; b < batches; b += workers) {
+                    if (this.isCancelled()) {
+                        return;
+                    }
+                    int from = b * batchSize;
+                    int to = Math.min(from + batchSize, counted.size());
+                    try {
+                        Map<String, Boolean> probed = acc.fetchActivities(this.smartdataurl, counted.subList(from, to), this.storage, this.dateattribute, rangeStart, rangeEnd, this.threshold);
+                        for (int i = from; i < to; i++) {
+                            activities[i] = probed.get(counted.get(i));
+                            if (activities[i] == null) {
+                                warnings[i] = "Could not check activity of >" + counted.get(i) + "<";
+                            }
+                        }
+                    } catch (SmartDataAccessorException ex) {
+                        for (int i = from; i < to; i++) {
+                            warnings[i] = ex.getLocalizedMessage();
+                        }
+                    }
+                    this.setProgress(processed.addAndGet(to - from), activities.length);
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> curFuture : futures) {
+                curFuture.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            rob.setStatus(Response.Status.SERVICE_UNAVAILABLE);
+            rob.addErrorMessage("Calculation was cancelled.");
+            return rob;
+        } catch (ExecutionException ex) {
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            rob.addErrorMessage("Could not check collections: " + ex.getCause().getLocalizedMessage());
+            return rob;
+        } finally {
+            for (Future<?> curFuture : futures) {
+                curFuture.cancel(true);
+            }
+        }
+        if (this.isCancelled()) {
+            rob.setStatus(Response.Status.SERVICE_UNAVAILABLE);
+            rob.addErrorMessage("Calculation was cancelled.");
+            return rob;
+        }
+
+        // Merge results in order of the collections
+        List<String> active = new ArrayList<>();
+        List<String> inactive = new ArrayList<>();
+        for (int i = 0; i < activities.length; i++) {
+            if (warnings[i] != null) {
+                rob.addWarningMessage(warnings[i]);
+            } else if (activities[i]) {
+                active.add(counted.get(i));
+            } else {
+                inactive.add(counted.get(i));
+            }
+        }
+        rob.add("active", active.size());
+        rob.add("inactive", inactive.size());
+        rob.add("actives", active);
+        rob.add("inactives", inactive);
+        rob.setStatus(Response.Status.OK);
+        StatisticResource.RESULT_CACHE.put(this.getFingerprint(), rob);
+        return rob;
+    }
+}
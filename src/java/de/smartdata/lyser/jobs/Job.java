@@ -0,0 +1,194 @@
+package de.smartdata.lyser.jobs;
+
+import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
+import de.smartdata.lyser.cache.QueryFingerprint;
+import jakarta.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Calculation executed in background by the JobManager. Each job has an id
+ * for requesting its state and result, and the fingerprint of the query it
+ * calculates, so that identical jobs are only executed once at a time.
+ *
+ * @author Florian Fehring
+ */
+public abstract class Job implements Callable<ResponseObjectBuilder> {
+
+    private final String id = UUID.randomUUID().toString();
+    private final String type;
+    private final QueryFingerprint fingerprint;
+    private final LocalDateTime created = LocalDateTime.now();
+    private final AtomicReference<JobStatus> status = new AtomicReference<>(JobStatus.QUEUED);
+    private volatile LocalDateTime started;
+    private volatile LocalDateTime finished;
+    private volatile ResponseObjectBuilder result;
+    private volatile String error;
+    private volatile Future<ResponseObjectBuilder> future;
+    private volatile int processed;
+    private volatile int total;
+
+    /**
+     * Creates a job
+     *
+     * @param type Name of the jobs type
+     * @param fingerprint Fingerprint of the calculated query
+     */
+    protected Job(String type, QueryFingerprint fingerprint) {
+        this.type = type;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Executes the calculation
+     *
+     * @return Result of the calculation
+     * @throws Exception if the calculation fails
+     */
+    protected abstract ResponseObjectBuilder execute() throws Exception;
+
+    @Override
+    public final ResponseObjectBuilder call() throws Exception {
+        // Only a queued job is started, a concurrent cancel wins
+        if (!this.status.compareAndSet(JobStatus.QUEUED, JobStatus.RUNNING)) {
+            return null;
+        }
+        this.started = LocalDateTime.now();
+        try {
+            this.result = this.execute();
+            this.status.compareAndSet(JobStatus.RUNNING, JobStatus.DONE);
+            return this.result;
+        } catch (Exception ex) {
+            this.error = ex.getLocalizedMessage();
+            this.status.compareAndSet(JobStatus.RUNNING, JobStatus.FAILED);
+            throw ex;
+        } finally {
+            this.finished = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * Jobs should check this regularly and stop their calculation when
+     * cancelled.
+     *
+     * @return true if the job was cancelled
+     */
+    protected boolean isCancelled() {
+        return this.status.get() == JobStatus.CANCELLED || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Reports the progress of the calculation
+     *
+     * @param processed Number of already processed items
+     * @param total Number of items to process
+     */
+    protected void setProgress(int processed, int total) {
+        this.processed = processed;
+        this.total = total;
+    }
+
+    /**
+     * Cancels the job. A queued job will not be started, a running job is
+     * interrupted.
+     *
+     * @return true if the job was cancelled, false if it was already finished
+     */
+    public boolean cancel() {
+        JobStatus current;
+        do {
+            current = this.status.get();
+            if (current.isFinished()) {
+                return false;
+            }
+        } while (!this.status.compareAndSet(current, JobStatus.CANCELLED));
+        if (this.future != null) {
+            this.future.cancel(true);
+        }
+        if (this.finished == null) {
+            this.finished = LocalDateTime.now();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the result of the job
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @return Result, a result containing the error if the job failed or null
+     * if the job did not finish in time
+     */
+    public ResponseObjectBuilder await(long timeoutMillis) {
+        if (this.future == null) {
+            return null;
+        }
+        try {
+            return this.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException ex) {
+            ResponseObjectBuilder rob = new ResponseObjectBuilder();
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            rob.addErrorMessage("Job >" + this.id + "< " + this.status.get().name().toLowerCase() + ": " + this.error);
+            return rob;
+        }
+    }
+
+    void setFuture(Future<ResponseObjectBuilder> future) {
+        this.future = future;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public QueryFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    public JobStatus getStatus() {
+        return status.get();
+    }
+
+    public LocalDateTime getCreated() {
+        return created;
+    }
+
+    public LocalDateTime getStarted() {
+        return started;
+    }
+
+    public LocalDateTime getFinished() {
+        return finished;
+    }
+
+    public ResponseObjectBuilder getResult() {
+        return result;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,163 @@
+package de.smartdata.lyser.jobs;
+
+import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
+import de.smartdata.lyser.cache.QueryFingerprint;
+import de.smartdata.lyser.config.ApplicationExecutors;
+import de.smartdata.lyser.config.Configuration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes background jobs on a bounded pool of threads. Identical jobs
+ * (same query fingerprint) are executed only once at a time, further
+ * submissions get the already queued or running job. Finished jobs are kept
+ * for requesting their result until the retention time has passed.
+ *
+ * Configuration: jobs.threads (concurrent jobs), jobs.queue (maximum waiting
+ * jobs) and jobs.retention (seconds finished jobs are kept)
+ *
+ * @author Florian Fehring
+ */
+public class JobManager {
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_QUEUE = 100;
+    public static final int DEFAULT_RETENTION = 3600;
+
+    private static final JobManager INSTANCE = new JobManager();
+
+    private final ThreadPoolExecutor executor;
+    private final long retentionMillis;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<QueryFingerprint, Job> inFlight = new ConcurrentHashMap<>();
+
+    private JobManager() {
+        Configuration conf = new Configuration();
+        int threads = Math.max(1, conf.getIntProperty("jobs.threads", DEFAULT_THREADS));
+        int queue = Math.max(1, conf.getIntProperty("jobs.queue", DEFAULT_QUEUE));
+        this.retentionMillis = conf.getIntProperty("jobs.retention", DEFAULT_RETENTION) * 1000L;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queue), r -> {
+                    Thread t = new Thread(r, "SmartDataLyser-Job");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        ApplicationExecutors.register(this.executor);
+    }
+
+    public static JobManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Submits a job for execution. If an identical job is queued or running,
+     * that job is returned instead.
+     *
+     * @param job Job to execute
+     * @return The submitted or the already running identical job
+     * @throws RejectedExecutionException if too many jobs are waiting
+     */
+    public synchronized Job submit(Job job) throws RejectedExecutionException {
+        this.removeExpired();
+        Job running = this.inFlight.get(job.getFingerprint());
+        if (running != null && !running.getStatus().isFinished()) {
+            return running;
+        }
+        FutureTask<ResponseObjectBuilder> task = new FutureTask<>(job) {
+            @Override
+            protected void done() {
+                JobManager.this.inFlight.remove(job.getFingerprint(), job);
+            }
+        };
+        job.setFuture(task);
+        this.jobs.put(job.getId(), job);
+        this.inFlight.put(job.getFingerprint(), job);
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            this.jobs.remove(job.getId());
+            this.inFlight.remove(job.getFingerprint(), job);
+            throw ex;
+        }
+        return job;
+    }
+
+    /**
+     * Gets a job
+     *
+     * @param id Id of the job
+     * @return Job or null if there is no job with that id (anymore)
+     */
+    public Job getJob(String id) {
+        this.removeExpired();
+        return this.jobs.get(id);
+    }
+
+    /**
+     * Gets all known jobs
+     *
+     * @return List of queued, running and recently finished jobs
+     */
+    public List<Job> getJobs() {
+        this.removeExpired();
+        return new ArrayList<>(this.jobs.values());
+    }
+
+    /**
+     * Cancels a job
+     *
+     * @param id Id of the job
+     * @return true if the job was cancelled, false if it is unknown or
+     * already finished
+     */
+    public boolean cancel(String id) {
+        Job job = this.jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        boolean cancelled = job.cancel();
+        this.inFlight.remove(job.getFingerprint(), job);
+        return cancelled;
+    }
+
+    /**
+     * Gets the executor for parallel tasks of a job. This is the applications
+     * shared bounded worker pool, tasks submitted while all workers are busy
+     * run on the job thread itself.
+     *
+     * @return Executor for tasks of jobs
+     */
+    public ExecutorService getWorkerExecutor() {
+        return ApplicationExecutors.getWorkerExecutor();
+    }
+
+    /**
+     * @return Number of jobs currently executed
+     */
+    public int getRunningCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return Number of jobs waiting for execution
+     */
+    public int getQueuedCount() {
+        return this.executor.getQueue().size();
+    }
+
+    private void removeExpired() {
+        LocalDateTime limit = LocalDateTime.now().minusNanos(this.retentionMillis * 1000000);
+        this.jobs.values().removeIf(job -> job.getStatus().isFinished()
+                && job.getFinished() != null && job.getFinished().isBefore(limit));
+    }
+}
@@ -0,0 +1,21 @@
+package de.smartdata.lyser.jobs;
+
+/**
+ * States of a background job
+ *
+ * @author Florian Fehring
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * @return true if the job will not change its state anymore
+     */
+    public boolean isFinished() {
+        return this == DONE || this == FAILED || this == CANCELLED;
+    }
+}
@@ -1,42 +1,136 @@
 package de.smartdata.lyser.jsonhelper;
 
 import jakarta.json.JsonObjectBuilder;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Aggregates numeric values per key. Keeps running primitive state (count,
+ * sum, min, max, first, last and the variance after Welford), the values
+ * themselves are only kept for the median or when traceability is requested.
  *
  * @author Florian
  */
 public class NumericAggregator {
 
-    private final Map<String, List<Double>> values = new HashMap<>();
+    public static final String DEFAULT_FUNCTION = "avg";
+    public static final List<String> FUNCTIONS = List.of("avg", "sum", "min", "max", "count", "first", "last", "variance", "stddev", "median");
+
+    /**
+     * Running state of one key
+     */
+    private static class State {
+
+        final String function;
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double first;
+        double last;
+        double mean = 0;
+        double m2 = 0;
+        // Only used if the values are needed
+        double[] values;
+
+        State(String function, boolean keepValues) {
+            this.function = function;
+            if (keepValues) {
+                this.values = new double[4];
+            }
+        }
+
+        void add(double val) {
+            if (this.count == 0) {
+                this.first = val;
+            }
+            this.last = val;
+            if (this.values != null) {
+                if (this.count == this.values.length) {
+                    this.values = Arrays.copyOf(this.values, this.values.length * 2);
+                }
+                this.values[(int) this.count] = val;
+            }
+            this.count++;
+            this.sum += val;
+            this.min = Math.min(this.min, val);
+            this.max = Math.max(this.max, val);
+            double delta = val - this.mean;
+            this.mean += delta / this.count;
+            this.m2 += delta * (val - this.mean);
+        }
+
+        double result() {
+            return switch (this.function) {
+                case "sum" -> this.sum;
+                case "min" -> this.min;
+                case "max" -> this.max;
+                case "count" -> this.count;
+                case "first" -> this.first;
+                case "last" -> this.last;
+                case "variance" -> this.m2 / this.count;
+                case "stddev" -> Math.sqrt(this.m2 / this.count);
+                case "median" -> {
+                    double[] sorted = Arrays.copyOf(this.values, (int) this.count);
+                    Arrays.sort(sorted);
+                    int mid = sorted.length / 2;
+                    yield sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+                }
+                default -> this.sum / this.count;
+            };
+        }
+    }
+
+    private final Map<String, State> values = new LinkedHashMap<>();
+    private final Map<String, String> functions;
+    private final boolean traceability;
+
+    public NumericAggregator() {
+        this(Map.of(), false);
+    }
+
+    /**
+     * Creates an aggregator
+     *
+     * @param functions Aggregate function per key, keys without function are
+     * averaged
+     * @param traceability Keep the values for the traceability output
+     */
+    public NumericAggregator(Map<String, String> functions, boolean traceability) {
+        this.functions = functions;
+        this.traceability = traceability;
+    }
 
     public void add(String key, String rawValue) {
         try {
             double val = Double.parseDouble(rawValue);
-            values.computeIfAbsent(key, k -> new ArrayList<>()).add(val);
+            State state = this.values.get(key);
+            if (state == null) {
+                String function = this.functions.getOrDefault(key, DEFAULT_FUNCTION);
+                state = new State(function, this.traceability || "median".equals(function));
+                this.values.put(key, state);
+            }
+            state.add(val);
         } catch (NumberFormatException ignored) {
             // Optional: Logging
         }
     }
 
     public void writeTo(JsonObjectBuilder builder, Boolean traceability) {
-        for (Map.Entry<String, List<Double>> entry : values.entrySet()) {
+        for (Map.Entry<String, State> entry : values.entrySet()) {
             String key = entry.getKey();
-            List<Double> nums = entry.getValue();
-
-            if (!nums.isEmpty()) {
-                double avg = nums.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
-                builder.add(key, avg);
-                if (nums.size() > 1 && traceability) {
-//                    String joined = nums.stream()
-//                            .map(String::valueOf)
-//                            .collect(Collectors.joining(", "));
-//                    builder.add(key +"_is_avg_from", joined);
-                    builder.add(key + "_is_avg_from", nums+"");
+            State state = entry.getValue();
+
+            if (state.count > 0) {
+                if ("count".equals(state.function)) {
+                    builder.add(key, state.count);
+                } else {
+                    builder.add(key, state.result());
+                }
+                if (state.count > 1 && traceability && state.values != null) {
+                    builder.add(key + "_is_" + state.function + "_from", Arrays.toString(Arrays.copyOf(state.values, (int) state.count)));
                 }
             }
         }
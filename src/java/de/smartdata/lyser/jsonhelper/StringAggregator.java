@@ -2,36 +2,106 @@ package de.smartdata.lyser.jsonhelper;
 
 import jakarta.json.JsonObjectBuilder;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Aggregates text values per key. With first or last only that value is
+ * kept, the values themselves are only kept for the median (the middle of
+ * the delivered values) or when traceability is requested.
  *
  * @author Florian
  */
 public class StringAggregator {
 
-    private final Map<String, List<String>> values = new HashMap<>();
+    public static final String DEFAULT_FUNCTION = "median";
+    public static final List<String> FUNCTIONS = List.of("median", "first", "last");
+
+    /**
+     * State of one key
+     */
+    private static class State {
+
+        final String function;
+        int count = 0;
+        String first;
+        String last;
+        // Only used if the values are needed
+        List<String> values;
+
+        State(String function, boolean keepValues) {
+            this.function = function;
+            if (keepValues) {
+                this.values = new ArrayList<>();
+            }
+        }
+
+        void add(String val) {
+            if (this.count == 0) {
+                this.first = val;
+            }
+            this.last = val;
+            if (this.values != null) {
+                this.values.add(val);
+            }
+            this.count++;
+        }
+
+        String result() {
+            return switch (this.function) {
+                case "first" -> this.first;
+                case "last" -> this.last;
+                default -> this.values.get(this.count / 2);
+            };
+        }
+    }
+
+    private final Map<String, State> values = new LinkedHashMap<>();
+    private final Map<String, String> functions;
+    private final boolean traceability;
+
+    public StringAggregator() {
+        this(Map.of(), false);
+    }
+
+    /**
+     * Creates an aggregator
+     *
+     * @param functions Aggregate function per key, keys without function or
+     * with a function not applicable to texts use the median
+     * @param traceability Keep the values for the traceability output
+     */
+    public StringAggregator(Map<String, String> functions, boolean traceability) {
+        this.functions = functions;
+        this.traceability = traceability;
+    }
 
     public void add(String key, String rawValue) {
         if (rawValue != null && !rawValue.isEmpty()) {
-            values.computeIfAbsent(key, k -> new ArrayList<>()).add(rawValue);
+            State state = this.values.get(key);
+            if (state == null) {
+                String function = this.functions.getOrDefault(key, DEFAULT_FUNCTION);
+                if (!FUNCTIONS.contains(function)) {
+                    function = DEFAULT_FUNCTION;
+                }
+                state = new State(function, this.traceability || DEFAULT_FUNCTION.equals(function));
+                this.values.put(key, state);
+            }
+            state.add(rawValue);
         }
     }
 
     public void writeTo(JsonObjectBuilder builder, Boolean traceability) {
-        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+        for (Map.Entry<String, State> entry : values.entrySet()) {
             String key = entry.getKey();
-            List<String> strings = entry.getValue();
+            State state = entry.getValue();
 
-            if (!strings.isEmpty()) {
-                int medianIndex = strings.size() / 2;
-                String median = strings.get(medianIndex);
-                builder.add(key, median);
+            if (state.count > 0) {
+                builder.add(key, state.result());
 
-                if (strings.size() > 1 && traceability) {
-                    builder.add(key + "_is_median_from", strings.toString());
+                if (state.count > 1 && traceability && state.values != null) {
+                    builder.add(key + "_is_" + state.function + "_from", state.values.toString());
                 }
             }
         }
@@ -41,4 +111,3 @@ public class StringAggregator {
         return this.values.size();
     }
 }
-
@@ -34,6 +34,7 @@ public class ApplicationConfig extends Application {
         resources.add(de.smartdata.lyser.rest.CompareResource.class);
         resources.add(de.smartdata.lyser.rest.DataAggregationResource.class);
         resources.add(de.smartdata.lyser.rest.GeoResource.class);
+        resources.add(de.smartdata.lyser.rest.JobResource.class);
         resources.add(de.smartdata.lyser.rest.StatisticResource.class);
         resources.add(de.smartdata.lyser.rest.SystemResource.class);
     }
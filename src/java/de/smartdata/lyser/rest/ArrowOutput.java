@@ -0,0 +1,67 @@
+package de.smartdata.lyser.rest;
+
+import de.smartdata.lyser.arrow.ArrowStreamWriter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Delivers results as Apache Arrow IPC stream for clients that request
+ * application/vnd.apache.arrow.stream
+ *
+ * @author Florian Fehring
+ */
+public class ArrowOutput {
+
+    /**
+     * Writes the content of a streamed response
+     */
+    @FunctionalInterface
+    public interface Producer {
+
+        void produce(OutputStream os) throws IOException;
+    }
+
+    private ArrowOutput() {
+    }
+
+    /**
+     * Checks if the client requested an Arrow stream
+     *
+     * @param headers Headers of the request
+     * @return true if application/vnd.apache.arrow.stream is explicitly
+     * accepted
+     */
+    public static boolean isAccepted(HttpHeaders headers) {
+        if (headers == null) {
+            return false;
+        }
+        for (MediaType curType : headers.getAcceptableMediaTypes()) {
+            if ("application".equalsIgnoreCase(curType.getType())
+                    && "vnd.apache.arrow.stream".equalsIgnoreCase(curType.getSubtype())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a response that streams the produced Arrow data
+     *
+     * @param producer Producer writing the stream, usually with an
+     * ArrowStreamWriter
+     * @return Response with status OK and the Arrow stream content type
+     */
+    public static Response stream(Producer producer) {
+        StreamingOutput output = os -> {
+            OutputStream bos = new BufferedOutputStream(os, 65536);
+            producer.produce(bos);
+            bos.flush();
+        };
+        return Response.ok(output, ArrowStreamWriter.MEDIA_TYPE).build();
+    }
+}
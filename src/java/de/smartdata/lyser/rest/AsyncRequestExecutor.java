@@ -0,0 +1,94 @@
+package de.smartdata.lyser.rest;
+
+import de.fhbielefeld.scl.logger.Logger;
+import de.fhbielefeld.scl.logger.message.Message;
+import de.fhbielefeld.scl.logger.message.MessageLevel;
+import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
+import de.smartdata.lyser.config.ApplicationExecutors;
+import de.smartdata.lyser.config.Configuration;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * Executes long running requests outside of the containers request threads.
+ * The calculation runs on the managed executor of the application server, if
+ * it is not available on an own pool of async.threads threads. Requests are
+ * answered with 503 when the calculation takes longer than async.timeout
+ * seconds.
+ *
+ * @author Florian Fehring
+ */
+public class AsyncRequestExecutor {
+
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_TIMEOUT = 300;
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static final long TIMEOUT = new Configuration().getIntProperty("async.timeout", DEFAULT_TIMEOUT);
+
+    private AsyncRequestExecutor() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) new InitialContext().lookup("java:comp/DefaultManagedExecutorService");
+        } catch (NamingException | ClassCastException ex) {
+            Message msg = new Message("", MessageLevel.ERROR, "Could not get managed executor, using own threads: " + ex.getLocalizedMessage());
+            Logger.addMessage(msg);
+        }
+        int threads = Math.max(1, new Configuration().getIntProperty("async.threads", DEFAULT_THREADS));
+        // Own threads have to be stopped on undeploy, the managed executor not
+        return ApplicationExecutors.register(Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "SmartDataLyser-Request");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    /**
+     * Calculates the response in background and resumes the suspended
+     * request with it
+     *
+     * @param asyncResponse Suspended request
+     * @param calculation Calculation creating the response
+     */
+    public static void resume(AsyncResponse asyncResponse, Supplier<Response> calculation) {
+        asyncResponse.setTimeout(TIMEOUT, TimeUnit.SECONDS);
+        Future<?> future;
+        try {
+            future = EXECUTOR.submit(() -> {
+                try {
+                    asyncResponse.resume(calculation.get());
+                } catch (RuntimeException ex) {
+                    ResponseObjectBuilder rob = new ResponseObjectBuilder();
+                    rob.addErrorMessage("Could not calculate: " + ex.getClass().getSimpleName() + ": " + ex.getLocalizedMessage());
+                    rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+                    asyncResponse.resume(rob.toResponse());
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            ResponseObjectBuilder rob = new ResponseObjectBuilder();
+            rob.addErrorMessage("Too many calculations are running, try again later.");
+            rob.setStatus(Response.Status.SERVICE_UNAVAILABLE);
+            asyncResponse.resume(rob.toResponse());
+            return;
+        }
+        // Nobody waits for the result after the timeout, so the calculation
+        // is interrupted to free its connections and threads
+        asyncResponse.setTimeoutHandler(timedout -> {
+            future.cancel(true);
+            ResponseObjectBuilder rob = new ResponseObjectBuilder();
+            rob.addErrorMessage("Calculation took longer than " + TIMEOUT + " seconds.");
+            rob.setStatus(Response.Status.SERVICE_UNAVAILABLE);
+            timedout.resume(rob.toResponse());
+        });
+    }
+}
@@ -11,6 +11,8 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.io.Serializable;
@@ -58,7 +60,11 @@ public class CheckResource implements Serializable {
     @APIResponse(
             responseCode = "500",
             description = "Internal error")
-    public Response completeness(
+    @APIResponse(
+            responseCode = "503",
+            description = "Calculation took too long")
+    public void completeness(
+            @Suspended AsyncResponse asyncResponse,
             @Parameter(description = "SmartData URL", required = true) @QueryParam("smartdataurl") String smartdataurl,
             @Parameter(description = "Collection", required = true, example = "mycollection") @QueryParam("collection") String collection,
             @Parameter(description = "Storage", required = false, example = "public") @QueryParam("storage") String storage,
@@ -67,6 +73,10 @@ public class CheckResource implements Serializable {
             @Parameter(description = "Start date", example = "2020-12-24T18:00") @QueryParam("start") String start,
             @Parameter(description = "End date", example = "2020-12-24T19:00") @QueryParam("end") String end,
             @Parameter(description = "Measurement frequence (in seconds)", example = "10") @QueryParam("measurefreq") Long measurefreq) {
+        AsyncRequestExecutor.resume(asyncResponse, () -> this.calculateCompleteness(smartdataurl, collection, storage, filters, dateattribute, start, end, measurefreq));
+    }
+
+    private Response calculateCompleteness(String smartdataurl, String collection, String storage, List<String> filters, String dateattribute, String start, String end, Long measurefreq) {
 
         ResponseObjectBuilder rob = new ResponseObjectBuilder();
 
@@ -2,32 +2,49 @@ package de.smartdata.lyser.rest;
 
 import de.fhbielefeld.scl.logger.Logger;
 import de.fhbielefeld.scl.logger.LoggerException;
+import de.fhbielefeld.scl.logger.message.Message;
+import de.fhbielefeld.scl.logger.message.MessageLevel;
 import de.fhbielefeld.scl.rest.util.ResponseListBuilder;
 import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
 import de.fhbielefeld.smartuser.annotations.SmartUserAuth;
 import de.smartdata.lyser.aggregate.TemporalClusterMaker;
+import de.smartdata.lyser.arrow.ArrowStreamWriter;
+import de.smartdata.lyser.data.MergingRecordCursor;
+import de.smartdata.lyser.data.RecordCursor;
 import de.smartdata.lyser.data.SmartDataAccessor;
 import de.smartdata.lyser.data.SmartDataAccessorException;
+import de.smartdata.lyser.data.SmartDataRegistry;
 import de.smartdata.lyser.rest.dataaggregation.ClusterRequest;
 import de.smartdata.lyser.rest.dataaggregation.DatasourceConfig;
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeParseException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import javax.naming.NamingException;
 import org.eclipse.microprofile.openapi.annotations.Operation;
@@ -43,10 +60,6 @@ import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 @Tag(name = "Aggregation", description = "Aggregate data")
 public class DataAggregationResource implements Serializable {
 
-    // Stores last calculated values
-    public static Map<String, ResponseObjectBuilder> cache_count = new HashMap();
-    public static Map<String, ResponseObjectBuilder> cache_activeindex = new HashMap();
-
     public DataAggregationResource() {
         // Init logging
         try {
@@ -61,10 +74,16 @@ public class DataAggregationResource implements Serializable {
     @POST
     @Path("temporalcluster")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, NdjsonOutput.APPLICATION_NDJSON, ArrowStreamWriter.MEDIA_TYPE})
     @SmartUserAuth
     @Operation(summary = "Temporal clusting",
-            description = "Builds temporal clusters from datasets that are in the same timeslot.")
+            description = "Builds temporal clusters from datasets that are in the same timeslot. "
+            + "With Accept: application/x-ndjson the result is streamed, one JSON object per line: "
+            + "first {\"meta\": ...}, then each cluster record, {\"clustererror\": ...} and with traceability {\"inputDataset\": ...}. "
+            + "Datasources ordered by the date attribute are merged while they are read when neither traceability nor processed_attr is requested, "
+            + "the clusters are then streamed as soon as their window is closed and the meta line is written last. "
+            + "With Accept: application/vnd.apache.arrow.stream the cluster records are delivered as Arrow IPC stream "
+            + "with one column per attribute, the meta information is placed in the schema metadata.")
     @APIResponse(
             responseCode = "200",
             description = "Count result")
@@ -74,7 +93,21 @@ public class DataAggregationResource implements Serializable {
     @APIResponse(
             responseCode = "500",
             description = "Internal error")
-    public Response temporalcluster(ClusterRequest request) {
+    @APIResponse(
+            responseCode = "503",
+            description = "Calculation took too long")
+    public void temporalcluster(@Suspended AsyncResponse asyncResponse, @Context HttpHeaders headers, ClusterRequest request) {
+        String format = MediaType.APPLICATION_JSON;
+        if (ArrowOutput.isAccepted(headers)) {
+            format = ArrowStreamWriter.MEDIA_TYPE;
+        } else if (NdjsonOutput.isAccepted(headers)) {
+            format = NdjsonOutput.APPLICATION_NDJSON;
+        }
+        String responseFormat = format;
+        AsyncRequestExecutor.resume(asyncResponse, () -> this.calculateTemporalCluster(request, responseFormat));
+    }
+
+    private Response calculateTemporalCluster(ClusterRequest request, String format) {
 
         ResponseObjectBuilder rob = new ResponseObjectBuilder();
 
@@ -126,13 +159,10 @@ public class DataAggregationResource implements Serializable {
             long completedWindows = elapsedSeconds / request.cluster_seconds;
             Instant lastWindowClose = startInstant.plusSeconds(completedWindows * request.cluster_seconds);
             endDate = LocalDateTime.ofInstant(lastWindowClose, zone);
-            rob.add("cluster_until", endDate);
         }
         
-        JsonArrayBuilder dataBuilder = Json.createArrayBuilder();
-        JsonArrayBuilder inputDataSetsUrlsBuilder = Json.createArrayBuilder();
-        int inputDataSetsCount = 0;
-        // Get data from each datasource
+        // Check and autocorrect the datasources
+        boolean sortedSources = true;
         for (DatasourceConfig curSource : request.datasources) {
             // Check and autocorrect values if possible
             if (curSource.smartdataurl == null) {
@@ -160,18 +190,37 @@ public class DataAggregationResource implements Serializable {
             if (curSource.limit == null) {
                 curSource.limit = 100L;
             }
+            String order = curSource.order.trim().replaceAll("[ ,]+", " ");
+            if (!order.equals(request.date_attr) && !order.equalsIgnoreCase(request.date_attr + " ASC")) {
+                sortedSources = false;
+            }
+        }
 
+        // Sources delivered in order of time can be merged while they are read,
+        // if the datasets are not needed after clustering
+        if (sortedSources && !request.traceability && request.processed_attr == null) {
+            return this.streamTemporalCluster(request, format, startDate, endDate);
+        }
+
+        List<String> warnings = new ArrayList<>();
+        JsonArrayBuilder dataBuilder = Json.createArrayBuilder();
+        JsonArrayBuilder inputDataSetsUrlsBuilder = Json.createArrayBuilder();
+        int inputDataSetsCount = 0;
+        // Get data from each datasource
+        for (DatasourceConfig curSource : request.datasources) {
             // SmartDataAccessor accesses the SmartData either by URL (smartdataurl) or if locally available by useing the JDBC-Resource defined in the given SmartData Instance
             JsonArray curData;
-            SmartDataAccessor acc = new SmartDataAccessor(curSource.smartdataurl);
+            SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(curSource.smartdataurl);
 
             try {
                 curData = acc.fetchData(curSource.smartdataurl, curSource.collection, curSource.storage, curSource.includes, curSource.filter, request.date_attr, startDate, endDate, curSource.order);
                 inputDataSetsCount += curData.size();
-                inputDataSetsUrlsBuilder.add(acc.getSmartdataRequest());
+                if (acc.getSmartdataRequest() != null) {
+                    inputDataSetsUrlsBuilder.add(acc.getSmartdataRequest());
+                }
                 // Check if there is data
                 if (curData.isEmpty()) {
-                    rob.addWarningMessage("There was no data for aggregation found from source >" + curSource.smartdataurl + "/" + curSource.collection + "<.");
+                    warnings.add("There was no data for aggregation found from source >" + curSource.smartdataurl + "/" + curSource.collection + "<.");
                 } else {
                     String sourceId = curSource.smartdataurl
                             + ";" + curSource.collection
@@ -184,7 +233,7 @@ public class DataAggregationResource implements Serializable {
                             extended.add("source", sourceId);
                             dataBuilder.add(extended.build());
                         } else {
-                            rob.addWarningMessage("Unexpected non-object element in dataset.");
+                            warnings.add("Unexpected non-object element in dataset.");
                         }
                     });
                 }
@@ -194,45 +243,347 @@ public class DataAggregationResource implements Serializable {
                 return rob.toResponse();
             }
         }
-        rob.add("inputDatasetsCount", inputDataSetsCount);
-        rob.add("inputDatasetsUrls", inputDataSetsUrlsBuilder.build());
-
         JsonArray data = dataBuilder.build();
+        List<String> errors = this.markProcessed(request, data);
+        if (request.processed_attr != null) {
+            warnings.add("Used datasets were marked as processed by setting the attribute >" + request.processed_attr + "< to true.");
+        }
 
         // Create TemporalClusterer Object
         TemporalClusterMaker tcm = new TemporalClusterMaker();
         tcm.setMapping(request.mapping);
-        JsonObject result = tcm.makeCluster(data, request.date_attr, request.cluster_seconds, request.traceability, request.onlyclosedclusters, calcStartTime);
 
-        ResponseListBuilder sourceDatasets = new ResponseListBuilder();
-        for (int i = 0; i < data.size(); i++) {
-            JsonObject obj = data.getJsonObject(i);
-            sourceDatasets.add(obj);
+        if (ArrowStreamWriter.MEDIA_TYPE.equals(format)) {
+            List<JsonObject> records = new ArrayList<>();
+            List<String> clusterErrors = new ArrayList<>();
+            tcm.makeCluster(data, request.date_attr, request.cluster_seconds, request.traceability, request.onlyclosedclusters, calcStartTime, new TemporalClusterMaker.ClusterSink() {
+                @Override
+                public void record(JsonObject record) {
+                    records.add(record);
+                }
 
-            // If marking sets is activated
-            if (request.processed_attr != null) {
-                try {
-                    JsonObjectBuilder updateSet = Json.createObjectBuilder();
-                    updateSet.add("id", obj.getJsonNumber("id").longValue());
-                    updateSet.add(request.processed_attr, true);
-                    String sourceId = obj.getString("source", null);
-                    String[] sourceIdParts = sourceId.split(";");
-                    SmartDataAccessor acc = new SmartDataAccessor(sourceIdParts[0]);
-                    // Update with sourceIdParts[0] = SmartDataURL, sourceIdParts[1] = collection, sourceIdParts[2] = storage
-                    acc.updateData(sourceIdParts[0], sourceIdParts[1], sourceIdParts[2], updateSet.build());
-                } catch (SmartDataAccessorException ex) {
-                    rob.addErrorMessage("Could not mark datasets as processed. Error: " + ex.getLocalizedMessage());
+                @Override
+                public void error(JsonValue error) {
+                    clusterErrors.add(error.toString());
                 }
+            });
+            errors.addAll(clusterErrors);
+            Map<String, String> meta = new LinkedHashMap<>();
+            if (request.onlyclosedclusters) {
+                meta.put("cluster_until", endDate.toString());
             }
+            meta.put("inputDatasetsCount", Integer.toString(inputDataSetsCount));
+            meta.put("inputDatasetsUrls", inputDataSetsUrlsBuilder.build().toString());
+            meta.put("warnings", Json.createArrayBuilder(warnings).build().toString());
+            meta.put("errors", Json.createArrayBuilder(errors).build().toString());
+            return this.arrowClusterRecords(records, meta);
         }
-        if (request.processed_attr != null) {
-            rob.addWarningMessage("Used datasets were marked as processed by setting the attribute >" + request.processed_attr + "< to true.");
+
+        if (NdjsonOutput.APPLICATION_NDJSON.equals(format)) {
+            JsonObjectBuilder meta = Json.createObjectBuilder();
+            if (request.onlyclosedclusters) {
+                meta.add("cluster_until", endDate.toString());
+            }
+            meta.add("inputDatasetsCount", inputDataSetsCount);
+            meta.add("inputDatasetsUrls", inputDataSetsUrlsBuilder.build());
+            meta.add("warnings", Json.createArrayBuilder(warnings));
+            meta.add("errors", Json.createArrayBuilder(errors));
+            JsonObject metaLine = Json.createObjectBuilder().add("meta", meta).build();
+            return NdjsonOutput.stream(out -> {
+                out.write(metaLine);
+                try {
+                    tcm.makeCluster(data, request.date_attr, request.cluster_seconds, request.traceability, request.onlyclosedclusters, calcStartTime, new TemporalClusterMaker.ClusterSink() {
+                        @Override
+                        public void record(JsonObject record) {
+                            try {
+                                out.write(record);
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+
+                        @Override
+                        public void error(JsonValue error) {
+                            try {
+                                out.write(Json.createObjectBuilder().add("clustererror", error).build());
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+                    });
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                if (request.traceability) {
+                    for (int i = 0; i < data.size(); i++) {
+                        out.write(Json.createObjectBuilder().add("inputDataset", data.get(i)).build());
+                    }
+                }
+            });
+        }
+
+        if (request.onlyclosedclusters) {
+            rob.add("cluster_until", endDate);
         }
+        rob.add("inputDatasetsCount", inputDataSetsCount);
+        rob.add("inputDatasetsUrls", inputDataSetsUrlsBuilder.build());
+        for (String curWarning : warnings) {
+            rob.addWarningMessage(curWarning);
+        }
+        for (String curError : errors) {
+            rob.addErrorMessage(curError);
+        }
+
+        JsonObject result = tcm.makeCluster(data, request.date_attr, request.cluster_seconds, request.traceability, request.onlyclosedclusters, calcStartTime);
+
         if (request.traceability) {
+            ResponseListBuilder sourceDatasets = new ResponseListBuilder();
+            for (int i = 0; i < data.size(); i++) {
+                sourceDatasets.add(data.getJsonObject(i));
+            }
             rob.add("inputDatasets", sourceDatasets);
         }
         rob.add(result);
         rob.setStatus(Response.Status.OK);
         return rob.toResponse();
     }
+
+    /**
+     * Clusters datasources that are delivered in order of time by merging
+     * them while they are read. Clusters are delivered as soon as their window
+     * is closed, only the datasets of the open window are held in memory.
+     *
+     * @param request Cluster request with checked datasources
+     * @param format Requested media type
+     * @param startDate Start of the time range
+     * @param endDate End of the time range
+     * @return Response
+     */
+    private Response streamTemporalCluster(ClusterRequest request, String format, LocalDateTime startDate, LocalDateTime endDate) {
+        List<RecordCursor> cursors = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        try {
+            for (DatasourceConfig curSource : request.datasources) {
+                SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(curSource.smartdataurl);
+                cursors.add(acc.openRecordCursor(curSource.smartdataurl, curSource.collection, curSource.storage, curSource.includes, curSource.filter, request.date_attr, startDate, endDate, curSource.order, null));
+                if (acc.getSmartdataRequest() != null) {
+                    urls.add(acc.getSmartdataRequest());
+                }
+            }
+        } catch (SmartDataAccessorException ex) {
+            try {
+                new MergingRecordCursor(cursors, request.date_attr).close();
+            } catch (SmartDataAccessorException ex1) {
+                Message msg = new Message("", MessageLevel.ERROR, "Could not close datasource: " + ex1.getLocalizedMessage());
+                Logger.addMessage(msg);
+            }
+            ResponseObjectBuilder rob = new ResponseObjectBuilder();
+            rob.addErrorMessage("Error fetching data from source: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            return rob.toResponse();
+        }
+        MergingRecordCursor merged = new MergingRecordCursor(cursors, request.date_attr);
+        TemporalClusterMaker tcm = new TemporalClusterMaker();
+        tcm.setMapping(request.mapping);
+
+        if (NdjsonOutput.APPLICATION_NDJSON.equals(format)) {
+            // Number of datasets is known at the end, so meta is the last line
+            return NdjsonOutput.stream(out -> {
+                List<String> errors = new ArrayList<>();
+                long count = 0;
+                try (merged) {
+                    count = tcm.makeCluster(merged, request.cluster_seconds, request.traceability, new TemporalClusterMaker.ClusterSink() {
+                        @Override
+                        public void record(JsonObject record) {
+                            try {
+                                out.write(record);
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+
+                        @Override
+                        public void error(JsonValue error) {
+                            try {
+                                out.write(Json.createObjectBuilder().add("clustererror", error).build());
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+                    });
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                } catch (SmartDataAccessorException ex) {
+                    errors.add("Error fetching data from source: " + ex.getLocalizedMessage());
+                }
+                JsonObjectBuilder meta = Json.createObjectBuilder();
+                if (request.onlyclosedclusters) {
+                    meta.add("cluster_until", endDate.toString());
+                }
+                meta.add("inputDatasetsCount", count);
+                meta.add("inputDatasetsUrls", Json.createArrayBuilder(urls));
+                meta.add("warnings", Json.createArrayBuilder(this.emptySourceWarnings(request, merged)));
+                meta.add("errors", Json.createArrayBuilder(errors));
+                out.write(Json.createObjectBuilder().add("meta", meta).build());
+            });
+        }
+
+        List<JsonObject> records = new ArrayList<>();
+        List<JsonValue> clusterErrors = new ArrayList<>();
+        long count;
+        try (merged) {
+            count = tcm.makeCluster(merged, request.cluster_seconds, request.traceability, new TemporalClusterMaker.ClusterSink() {
+                @Override
+                public void record(JsonObject record) {
+                    records.add(record);
+                }
+
+                @Override
+                public void error(JsonValue error) {
+                    clusterErrors.add(error);
+                }
+            });
+        } catch (SmartDataAccessorException ex) {
+            ResponseObjectBuilder rob = new ResponseObjectBuilder();
+            rob.addErrorMessage("Error fetching data from source: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            return rob.toResponse();
+        }
+        List<String> warnings = this.emptySourceWarnings(request, merged);
+
+        if (ArrowStreamWriter.MEDIA_TYPE.equals(format)) {
+            List<String> errors = new ArrayList<>();
+            for (JsonValue curError : clusterErrors) {
+                errors.add(curError.toString());
+            }
+            Map<String, String> meta = new LinkedHashMap<>();
+            if (request.onlyclosedclusters) {
+                meta.put("cluster_until", endDate.toString());
+            }
+            meta.put("inputDatasetsCount", Long.toString(count));
+            meta.put("inputDatasetsUrls", Json.createArrayBuilder(urls).build().toString());
+            meta.put("warnings", Json.createArrayBuilder(warnings).build().toString());
+            meta.put("errors", Json.createArrayBuilder(errors).build().toString());
+            return this.arrowClusterRecords(records, meta);
+        }
+
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+        if (request.onlyclosedclusters) {
+            rob.add("cluster_until", endDate);
+        }
+        rob.add("inputDatasetsCount", count);
+        rob.add("inputDatasetsUrls", Json.createArrayBuilder(urls).build());
+        for (String curWarning : warnings) {
+            rob.addWarningMessage(curWarning);
+        }
+        JsonObject result = Json.createObjectBuilder()
+                .add("clustererrors", Json.createArrayBuilder(clusterErrors))
+                .add("records", Json.createArrayBuilder(records))
+                .build();
+        rob.add(result);
+        rob.setStatus(Response.Status.OK);
+        return rob.toResponse();
+    }
+
+    private List<String> emptySourceWarnings(ClusterRequest request, MergingRecordCursor merged) {
+        List<String> warnings = new ArrayList<>();
+        for (int i = 0; i < request.datasources.size(); i++) {
+            if (merged.getCount(i) == 0) {
+                DatasourceConfig curSource = request.datasources.get(i);
+                warnings.add("There was no data for aggregation found from source >" + curSource.smartdataurl + "/" + curSource.collection + "<.");
+            }
+        }
+        return warnings;
+    }
+
+    /**
+     * Delivers cluster records as Arrow stream. The columns are the union of
+     * the records attributes in order of appearance, attributes with differing
+     * value types are delivered as text. The cluster timestamp
+     * (TemporalClusterMaker.TIMESTAMP_ATTR) is delivered as TIMESTAMP column.
+     *
+     * @param records Cluster records
+     * @param meta Meta information placed in the schema metadata
+     * @return Streaming response
+     */
+    private Response arrowClusterRecords(List<JsonObject> records, Map<String, String> meta) {
+        Map<String, ArrowStreamWriter.ColumnType> columns = new LinkedHashMap<>();
+        for (JsonObject curRecord : records) {
+            for (Map.Entry<String, JsonValue> curEntry : curRecord.entrySet()) {
+                ArrowStreamWriter.ColumnType type = switch (curEntry.getValue().getValueType()) {
+                    case NUMBER -> ArrowStreamWriter.ColumnType.FLOAT64;
+                    case TRUE, FALSE -> ArrowStreamWriter.ColumnType.BOOL;
+                    case NULL -> null;
+                    default -> TemporalClusterMaker.TIMESTAMP_ATTR.equals(curEntry.getKey()) ? ArrowStreamWriter.ColumnType.TIMESTAMP : ArrowStreamWriter.ColumnType.UTF8;
+                };
+                ArrowStreamWriter.ColumnType known = columns.get(curEntry.getKey());
+                if (known == null) {
+                    columns.put(curEntry.getKey(), type);
+                } else if (type != null && known != type) {
+                    columns.put(curEntry.getKey(), ArrowStreamWriter.ColumnType.UTF8);
+                }
+            }
+        }
+        String[] names = columns.keySet().toArray(new String[0]);
+        ArrowStreamWriter.ColumnType[] types = new ArrowStreamWriter.ColumnType[names.length];
+        for (int c = 0; c < names.length; c++) {
+            // Columns with only null values
+            types[c] = columns.get(names[c]) != null ? columns.get(names[c]) : ArrowStreamWriter.ColumnType.UTF8;
+        }
+
+        return ArrowOutput.stream(os -> {
+            try (ArrowStreamWriter writer = new ArrowStreamWriter(os, names, types, ArrowStreamWriter.DEFAULT_BATCH_SIZE)) {
+                for (Map.Entry<String, String> curEntry : meta.entrySet()) {
+                    writer.addMetadata(curEntry.getKey(), curEntry.getValue());
+                }
+                Object[] row = new Object[names.length];
+                for (JsonObject curRecord : records) {
+                    for (int c = 0; c < names.length; c++) {
+                        JsonValue value = curRecord.get(names[c]);
+                        if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+                            row[c] = null;
+                            continue;
+                        }
+                        row[c] = switch (types[c]) {
+                            case FLOAT64 -> ((JsonNumber) value).doubleValue();
+                            case BOOL -> value.getValueType() == JsonValue.ValueType.TRUE;
+                            case TIMESTAMP -> Instant.parse(((JsonString) value).getString()).toEpochMilli();
+                            default -> value.getValueType() == JsonValue.ValueType.STRING ? ((JsonString) value).getString() : value.toString();
+                        };
+                    }
+                    writer.writeRow(row);
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the used datasets as processed, if requested
+     *
+     * @param request Cluster request
+     * @param data Used datasets
+     * @return Errors occured while marking
+     */
+    private List<String> markProcessed(ClusterRequest request, JsonArray data) {
+        List<String> errors = new ArrayList<>();
+        if (request.processed_attr == null) {
+            return errors;
+        }
+        for (int i = 0; i < data.size(); i++) {
+            JsonObject obj = data.getJsonObject(i);
+            try {
+                JsonObjectBuilder updateSet = Json.createObjectBuilder();
+                updateSet.add("id", obj.getJsonNumber("id").longValue());
+                updateSet.add(request.processed_attr, true);
+                String sourceId = obj.getString("source", null);
+                String[] sourceIdParts = sourceId.split(";");
+                SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(sourceIdParts[0]);
+                // Update with sourceIdParts[0] = SmartDataURL, sourceIdParts[1] = collection, sourceIdParts[2] = storage
+                acc.updateData(sourceIdParts[0], sourceIdParts[1], sourceIdParts[2], updateSet.build());
+            } catch (SmartDataAccessorException ex) {
+                errors.add("Could not mark datasets as processed. Error: " + ex.getLocalizedMessage());
+            }
+        }
+        return errors;
+    }
 }
@@ -2,10 +2,15 @@ package de.smartdata.lyser.rest;
 
 import de.fhbielefeld.scl.logger.Logger;
 import de.fhbielefeld.scl.logger.LoggerException;
+import de.fhbielefeld.scl.logger.message.Message;
+import de.fhbielefeld.scl.logger.message.MessageLevel;
 import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
 import de.fhbielefeld.smartuser.annotations.SmartUserAuth;
+import de.smartdata.lyser.arrow.ArrowStreamWriter;
+import de.smartdata.lyser.data.ColumnarDataset;
 import de.smartdata.lyser.data.SmartDataAccessor;
 import de.smartdata.lyser.data.SmartDataAccessorException;
+import de.smartdata.lyser.data.SmartDataRegistry;
 import de.smartdata.lyser.distance.Distance;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
@@ -15,12 +20,15 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Map.Entry;
 import javax.naming.NamingException;
 import org.eclipse.microprofile.openapi.annotations.Operation;
@@ -44,10 +52,6 @@ import java.util.List;
 @Tag(name = "Geo", description = "Provides geo calculations on spatial data.")
 public class GeoResource implements Serializable {
 
-    // Stores last calculated values
-    public static Map<String, ResponseObjectBuilder> cache_count = new HashMap();
-    public static Map<String, ResponseObjectBuilder> cache_activeindex = new HashMap();
-
     public GeoResource() {
         // Init logging
         try {
@@ -127,45 +131,32 @@ public class GeoResource implements Serializable {
             startDT = LocalDateTime.now().minusDays(30);
         }
 
-        JsonArray data;
-
+        // Walk through the coordinates chunk by chunk while they are delivered
+        ColumnarDataset chunk = new ColumnarDataset(dateattr, new String[]{geoattr + "[0]", geoattr + "[1]"}, new String[0]);
+        double[] totalDistance = {0};
+        double[] prevPos = {Double.NaN, Double.NaN};
         try {
-            data = acc.fetchData(smartdataurl, collection, storage, geoattr, filters, dateattr, startDT, endDT, dateattr);
+            acc.streamColumnar(smartdataurl, collection, storage, filters, dateattr, startDT, endDT, dateattr, chunk, ColumnarDataset.DEFAULT_CHUNK_ROWS, data -> {
+                double[] lats = data.getNumbers(0);
+                double[] lngs = data.getNumbers(1);
+                for (int i = 0; i < data.size(); i++) {
+                    if (Double.isNaN(lats[i]) || Double.isNaN(lngs[i])) {
+                        continue;
+                    }
+                    if (!Double.isNaN(prevPos[0])) {
+                        totalDistance[0] += Distance.calc(lats[i], lngs[i], prevPos[0], prevPos[1]);
+                    }
+                    prevPos[0] = lats[i];
+                    prevPos[1] = lngs[i];
+                }
+            });
         } catch (SmartDataAccessorException ex) {
             rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
             rob.addErrorMessage("Could not calculate distance because of error: " + ex.getLocalizedMessage());
             return rob.toResponse();
         }
 
-        double totalDistance = 0;
-        Double prevLat = null;
-        Double prevLng = null;
-
-        // Walk trough sets
-        for (JsonValue curObj : data) {
-            JsonObject dateobj = curObj.asJsonObject();
-
-            JsonObject geoobj = dateobj.getJsonObject(geoattr);
-            if (geoobj == null) {
-                continue;
-            }
-
-            JsonArray geoarr = geoobj.getJsonArray("coordinates");
-            if (geoarr == null) {
-                continue;
-            }
-
-            double lat = geoarr.getJsonNumber(0).doubleValue();
-            double lng = geoarr.getJsonNumber(1).doubleValue();
-
-            if (prevLat != null && prevLng != null) {
-                totalDistance += Distance.calc(lat, lng, prevLat, prevLng);
-            }
-            prevLat = lat;
-            prevLng = lng;
-        }
-
-        rob.add("totalKM", totalDistance);
+        rob.add("totalKM", totalDistance[0]);
         rob.setStatus(Response.Status.OK);
         return rob.toResponse();
     }
@@ -238,40 +229,30 @@ public class GeoResource implements Serializable {
             startDT = LocalDateTime.now().minusDays(30);
         }
 
-        JsonArray data;
-
+        // Walk through the altitudes chunk by chunk while they are delivered
+        ColumnarDataset chunk = new ColumnarDataset(dateattr, new String[]{geoattr}, new String[0]);
+        double[] totalAltitude = {0};
+        double[] prevAltitude = {Double.NaN};
         try {
-            data = acc.fetchData(smartdataurl, collection, storage, geoattr, filters, dateattr, startDT, endDT, dateattr);
+            acc.streamColumnar(smartdataurl, collection, storage, filters, dateattr, startDT, endDT, dateattr, chunk, ColumnarDataset.DEFAULT_CHUNK_ROWS, data -> {
+                double[] altitudes = data.getNumbers(0);
+                for (int i = 0; i < data.size(); i++) {
+                    if (Double.isNaN(altitudes[i])) {
+                        continue;
+                    }
+                    if (!Double.isNaN(prevAltitude[0])) {
+                        totalAltitude[0] += Math.abs(prevAltitude[0] - altitudes[i]);
+                    }
+                    prevAltitude[0] = altitudes[i];
+                }
+            });
         } catch (SmartDataAccessorException ex) {
             rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
             rob.addErrorMessage("Could not calculate altitude difference because of error: " + ex.getLocalizedMessage());
             return rob.toResponse();
         }
 
-        double totalAltitude = 0;
-        Double prevAltitude = null;
-
-        // Walk trough sets
-        for (JsonValue curObj : data) {
-            JsonObject dateobj = curObj.asJsonObject();
-
-            if (dateobj.getJsonNumber(geoattr) == null) {
-                continue;
-            }
-
-            Double altitude = dateobj.getJsonNumber(geoattr).doubleValue();
-
-            if (prevAltitude != null) {
-                double result = prevAltitude - altitude;
-                if (result < 0) {
-                    result *= -1;
-                }
-                totalAltitude += result;
-            }
-            prevAltitude = altitude;
-        }
-
-        rob.add("altitudeMeters", totalAltitude);
+        rob.add("altitudeMeters", totalAltitude[0]);
         rob.setStatus(Response.Status.OK);
         return rob.toResponse();
     }
@@ -279,10 +260,12 @@ public class GeoResource implements Serializable {
     @GET
     @Path("neargeometries")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, NdjsonOutput.APPLICATION_NDJSON, ArrowStreamWriter.MEDIA_TYPE})
     @SmartUserAuth
     @Operation(summary = "Near geometries",
-            description = "Deliver all datasets, where the geometries withinin a distance of x meters or less from each other.")
+            description = "Deliver all datasets, where the geometries withinin a distance of x meters or less from each other. "
+            + "With Accept: application/x-ndjson each pair is streamed as one line {\"a\": id, \"b\": id, \"dist\": meters}, "
+            + "with Accept: application/vnd.apache.arrow.stream the pairs are delivered as Arrow IPC stream with columns a, b and dist.")
     @APIResponse(
             responseCode = "200",
             description = "List of datasets with near geometries.")
@@ -292,7 +275,12 @@ public class GeoResource implements Serializable {
     @APIResponse(
             responseCode = "500",
             description = "Internal error")
-    public Response neargeometries(
+    @APIResponse(
+            responseCode = "503",
+            description = "Calculation took too long")
+    public void neargeometries(
+            @Suspended AsyncResponse asyncResponse,
+            @Context HttpHeaders headers,
             @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
             @Parameter(description = "Storage1 name", schema = @Schema(type = STRING, defaultValue = "public")) @QueryParam("storage1") String storage1,
             @Parameter(description = "Collection 1 name", example = "col1") @QueryParam("collection1") String collection1,
@@ -301,10 +289,111 @@ public class GeoResource implements Serializable {
             @Parameter(description = "Collection 2 name", example = "col1") @QueryParam("collection2") String collection2,
             @Parameter(description = "Geometry attribute 2 name", schema = @Schema(type = STRING, defaultValue = "geom")) @QueryParam("geomattr2") String geomattr2,
             @Parameter(description = "Maximum distance", schema = @Schema(type = STRING, defaultValue = "geom")) @QueryParam("distance") String distance) {
+        if (ArrowOutput.isAccepted(headers)) {
+            AsyncRequestExecutor.resume(asyncResponse, () -> this.arrowNearGeometries(smartdataurl, storage1, collection1, geomattr1, storage2, collection2, geomattr2, distance));
+            return;
+        }
+        if (NdjsonOutput.isAccepted(headers)) {
+            // Resuming writes the stream, so the query runs on the executor
+            AsyncRequestExecutor.resume(asyncResponse, () -> this.streamNearGeometries(smartdataurl, storage1, collection1, geomattr1, storage2, collection2, geomattr2, distance));
+            return;
+        }
+        AsyncRequestExecutor.resume(asyncResponse, () -> this.findNearGeometries(smartdataurl, storage1, collection1, geomattr1, storage2, collection2, geomattr2, distance));
+    }
+
+    private static String nearGeometriesSql(String storage1, String collection1, String geomattr1, String storage2, String collection2, String geomattr2, String distance) {
+        return "SELECT a.id AS a, b.id AS b, ST_Distance(ST_Transform(a.coordinates, 3857), ST_Transform(b.coordinates, 3857)) AS dist FROM \""+storage1+"\".\""+collection1+"\" a JOIN \""+storage2+"\".\""+collection2+"\" b ON ST_DWithin(ST_Transform(a."+geomattr1+", 3857), ST_Transform(b."+geomattr2+", 3857), "+distance+") WHERE a.id < b.id";
+    }
+
+    /**
+     * Delivers the pairs of near geometries as Arrow stream with the column
+     * types of the query
+     */
+    private Response arrowNearGeometries(String smartdataurl, String storage1, String collection1, String geomattr1, String storage2, String collection2, String geomattr2, String distance) {
+        if (SmartDataRegistry.getInstance().getSmartDataInstance(smartdataurl).getDataSource() == null) {
+            ResponseObjectBuilder rob = new ResponseObjectBuilder();
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            rob.addErrorMessage("Could not recive data: no database connection available.");
+            return rob.toResponse();
+        }
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
+        String sql = nearGeometriesSql(storage1, collection1, geomattr1, storage2, collection2, geomattr2, distance);
+        // The connection is only taken when the stream is written
+        return ArrowOutput.stream(os -> {
+            try (Connection con = acc.getConnection()) {
+                if (con == null) {
+                    throw new IOException("Could not recive data: no database connection available.");
+                }
+                // Use a cursor, so that the pairs are not loaded at once
+                con.setAutoCommit(false);
+                try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                    pstmt.setFetchSize(SmartDataAccessor.DEFAULT_FETCH_SIZE);
+                    try (ResultSet rs = pstmt.executeQuery();
+                            ArrowStreamWriter writer = ArrowStreamWriter.forResultSet(os, rs.getMetaData())) {
+                        while (rs.next()) {
+                            writer.writeRow(rs);
+                        }
+                    }
+                } finally {
+                    // Only read, end the transaction before returning the connection
+                    con.rollback();
+                    con.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                throw new IOException("Could not recive data: " + ex.getLocalizedMessage(), ex);
+            }
+        });
+    }
+
+    /**
+     * Streams the pairs of near geometries while they are read from the
+     * database
+     */
+    private Response streamNearGeometries(String smartdataurl, String storage1, String collection1, String geomattr1, String storage2, String collection2, String geomattr2, String distance) {
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
+        String sql = nearGeometriesSql(storage1, collection1, geomattr1, storage2, collection2, geomattr2, distance);
+        return NdjsonOutput.stream(out -> {
+            Connection con = acc.getConnection();
+            if (con == null) {
+                out.writeObject(gen -> gen.write("error", "Could not recive data: no database connection available."));
+                return;
+            }
+            try {
+                // Use a cursor, so that the pairs are not loaded at once
+                con.setAutoCommit(false);
+                try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                    pstmt.setFetchSize(SmartDataAccessor.DEFAULT_FETCH_SIZE);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            long a = rs.getLong(1);
+                            long b = rs.getLong(2);
+                            double dist = rs.getDouble(3);
+                            out.writeObject(gen -> gen.write("a", a).write("b", b).write("dist", dist));
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                out.writeObject(gen -> gen.write("error", "Could not recive data: " + ex.getLocalizedMessage()));
+            } finally {
+                // Only read, end the transaction before returning the connection
+                try (Connection pooled = con) {
+                    if (!pooled.getAutoCommit()) {
+                        pooled.rollback();
+                        pooled.setAutoCommit(true);
+                    }
+                } catch (SQLException ex) {
+                    Message msg = new Message("", MessageLevel.ERROR, "Could not close db connection. Possible memory leak." + ex.getLocalizedMessage());
+                    Logger.addMessage(msg);
+                }
+            }
+        });
+    }
+
+    private Response findNearGeometries(String smartdataurl, String storage1, String collection1, String geomattr1, String storage2, String collection2, String geomattr2, String distance) {
 
         ResponseObjectBuilder rob = new ResponseObjectBuilder();
 
-        SmartDataAccessor acc = new SmartDataAccessor(smartdataurl);
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
         Connection con = acc.getConnection();
         PreparedStatement pstmt = null;
         ResultSet rs = null;
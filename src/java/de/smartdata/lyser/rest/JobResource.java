@@ -0,0 +1,181 @@
+package de.smartdata.lyser.rest;
+
+import de.fhbielefeld.scl.logger.Logger;
+import de.fhbielefeld.scl.logger.LoggerException;
+import de.fhbielefeld.scl.rest.util.ResponseListBuilder;
+import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
+import de.fhbielefeld.smartuser.annotations.SmartUserAuth;
+import de.smartdata.lyser.jobs.Job;
+import de.smartdata.lyser.jobs.JobManager;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import javax.naming.NamingException;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+/**
+ * REST interface for requesting state and results of background calculations
+ *
+ * @author Florian Fehring
+ */
+@Path("jobs")
+@Tag(name = "Jobs", description = "Background statistic calculations")
+public class JobResource {
+
+    public JobResource() {
+        // Init logging
+        try {
+            String moduleName = (String) new javax.naming.InitialContext().lookup("java:module/ModuleName");
+            Logger.getInstance("SmartDataLyser", moduleName);
+            Logger.setDebugMode(true);
+        } catch (LoggerException | NamingException ex) {
+            System.err.println("Error init logger: " + ex.getLocalizedMessage());
+        }
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "List jobs",
+            description = "Lists queued, running and recently finished jobs")
+    @APIResponse(
+            responseCode = "200",
+            description = "List of jobs")
+    public Response list() {
+        JobManager manager = JobManager.getInstance();
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+        ResponseListBuilder jobs = new ResponseListBuilder();
+        for (Job curJob : manager.getJobs()) {
+            jobs.add(this.describe(curJob));
+        }
+        rob.add("jobs", jobs);
+        rob.add("running", manager.getRunningCount());
+        rob.add("queued", manager.getQueuedCount());
+        rob.setStatus(Response.Status.OK);
+        return rob.toResponse();
+    }
+
+    @GET
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Job state",
+            description = "Gets the state of a job")
+    @APIResponse(
+            responseCode = "200",
+            description = "State of the job")
+    @APIResponse(
+            responseCode = "404",
+            description = "Job is unknown or expired")
+    public Response get(
+            @Parameter(description = "Job id", required = true) @PathParam("id") String id) {
+        Job job = JobManager.getInstance().getJob(id);
+        if (job == null) {
+            return this.notFound(id);
+        }
+        ResponseObjectBuilder rob = this.describe(job);
+        rob.setStatus(Response.Status.OK);
+        return rob.toResponse();
+    }
+
+    @GET
+    @Path("{id}/result")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Job result",
+            description = "Gets the result of a finished job")
+    @APIResponse(
+            responseCode = "200",
+            description = "Result of the calculation")
+    @APIResponse(
+            responseCode = "202",
+            description = "Job is not finished yet")
+    @APIResponse(
+            responseCode = "404",
+            description = "Job is unknown or expired")
+    public Response result(
+            @Parameter(description = "Job id", required = true) @PathParam("id") String id) {
+        Job job = JobManager.getInstance().getJob(id);
+        if (job == null) {
+            return this.notFound(id);
+        }
+        ResponseObjectBuilder result = job.getStatus().isFinished() ? job.await(1000) : null;
+        if (result == null) {
+            ResponseObjectBuilder rob = this.describe(job);
+            rob.addWarningMessage("Job >" + id + "< is not finished yet.");
+            rob.setStatus(Response.Status.ACCEPTED);
+            return rob.toResponse();
+        }
+        return result.toResponse();
+    }
+
+    @DELETE
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Cancel job",
+            description = "Cancels a queued or running job")
+    @APIResponse(
+            responseCode = "200",
+            description = "Job cancelled")
+    @APIResponse(
+            responseCode = "404",
+            description = "Job is unknown or expired")
+    @APIResponse(
+            responseCode = "409",
+            description = "Job is already finished")
+    public Response cancel(
+            @Parameter(description = "Job id", required = true) @PathParam("id") String id) {
+        JobManager manager = JobManager.getInstance();
+        Job job = manager.getJob(id);
+        if (job == null) {
+            return this.notFound(id);
+        }
+        ResponseObjectBuilder rob;
+        if (manager.cancel(id)) {
+            rob = this.describe(job);
+            rob.setStatus(Response.Status.OK);
+        } else {
+            rob = this.describe(job);
+            rob.addErrorMessage("Job >" + id + "< is already finished.");
+            rob.setStatus(Response.Status.CONFLICT);
+        }
+        return rob.toResponse();
+    }
+
+    private ResponseObjectBuilder describe(Job job) {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+        rob.add("id", job.getId());
+        rob.add("type", job.getType());
+        rob.add("status", job.getStatus().name());
+        rob.add("created", job.getCreated());
+        if (job.getTotal() > 0) {
+            rob.add("processed", job.getProcessed());
+            rob.add("total", job.getTotal());
+        }
+        if (job.getStarted() != null) {
+            rob.add("started", job.getStarted());
+        }
+        if (job.getFinished() != null) {
+            rob.add("finished", job.getFinished());
+        }
+        if (job.getError() != null) {
+            rob.add("error", job.getError());
+        }
+        return rob;
+    }
+
+    private Response notFound(String id) {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+        rob.addErrorMessage("Job >" + id + "< is unknown or expired.");
+        rob.setStatus(Response.Status.NOT_FOUND);
+        return rob.toResponse();
+    }
+}
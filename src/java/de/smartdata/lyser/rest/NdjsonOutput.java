@@ -0,0 +1,144 @@
+package de.smartdata.lyser.rest;
+
+import jakarta.json.Json;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes records as newline delimited JSON (one JSON value per line) while
+ * they are produced, so that clients can consume them before the calculation
+ * is finished and the records do not have to be held in memory.
+ *
+ * @author Florian Fehring
+ */
+public class NdjsonOutput {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    // Lines written before the output is flushed to the client
+    private static final int FLUSH_LINES = 100;
+    private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(Map.of());
+
+    /**
+     * Produces the lines of a streamed response
+     */
+    @FunctionalInterface
+    public interface Producer {
+
+        void produce(NdjsonOutput out) throws IOException;
+    }
+
+    /**
+     * Writes the members of one JSON object
+     */
+    @FunctionalInterface
+    public interface ObjectWriter {
+
+        void write(JsonGenerator gen);
+    }
+
+    private final Writer writer;
+    private int lines = 0;
+
+    private NdjsonOutput(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Checks if the client requested newline delimited JSON
+     *
+     * @param headers Headers of the request
+     * @return true if application/x-ndjson is explicitly accepted
+     */
+    public static boolean isAccepted(HttpHeaders headers) {
+        if (headers == null) {
+            return false;
+        }
+        for (MediaType curType : headers.getAcceptableMediaTypes()) {
+            if ("application".equalsIgnoreCase(curType.getType())
+                    && "x-ndjson".equalsIgnoreCase(curType.getSubtype())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a response that streams the produced lines
+     *
+     * @param producer Producer of the lines
+     * @return Response with status OK and content type application/x-ndjson
+     */
+    public static Response stream(Producer producer) {
+        StreamingOutput output = os -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+            producer.produce(new NdjsonOutput(writer));
+            writer.flush();
+        };
+        return Response.ok(output, APPLICATION_NDJSON).build();
+    }
+
+    /**
+     * Writes a value as one line
+     *
+     * @param value JSON value
+     * @throws IOException if the client is gone
+     */
+    public void write(JsonValue value) throws IOException {
+        try (JsonGenerator gen = GENERATOR_FACTORY.createGenerator(new UnclosableWriter(this.writer))) {
+            gen.write(value);
+        }
+        this.endLine();
+    }
+
+    /**
+     * Writes one JSON object as line, without building it in memory before
+     *
+     * @param objectWriter Writer of the objects members
+     * @throws IOException if the client is gone
+     */
+    public void writeObject(ObjectWriter objectWriter) throws IOException {
+        try (JsonGenerator gen = GENERATOR_FACTORY.createGenerator(new UnclosableWriter(this.writer))) {
+            gen.writeStartObject();
+            objectWriter.write(gen);
+            gen.writeEnd();
+        }
+        this.endLine();
+    }
+
+    private void endLine() throws IOException {
+        this.writer.write('\n');
+        this.lines++;
+        // First line is sent directly, so the client sees the stream started
+        if (this.lines == 1 || this.lines % FLUSH_LINES == 0) {
+            this.writer.flush();
+        }
+    }
+
+    /**
+     * Keeps the stream open when the generator of a line is closed
+     */
+    private static class UnclosableWriter extends FilterWriter {
+
+        UnclosableWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void close() {
+            // Underlying writer stays open for the next line
+        }
+    }
+}
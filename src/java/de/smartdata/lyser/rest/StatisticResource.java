@@ -7,24 +7,42 @@ import de.fhbielefeld.scl.logger.message.MessageLevel;
 import de.fhbielefeld.scl.rest.util.ResponseListBuilder;
 import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
 import de.fhbielefeld.smartuser.annotations.SmartUserAuth;
+import de.smartdata.lyser.cache.QueryFingerprint;
+import de.smartdata.lyser.cache.ResultCache;
+import de.smartdata.lyser.config.Configuration;
 import de.smartdata.lyser.data.SmartDataAccessor;
 import de.smartdata.lyser.data.SmartDataAccessorException;
-import de.smartdata.lyser.threads.ActivindexThread;
-import de.smartdata.lyser.threads.CountThread;
+import de.smartdata.lyser.data.SmartDataRegistry;
+import de.smartdata.lyser.jobs.ActivindexJob;
+import de.smartdata.lyser.jobs.Job;
+import de.smartdata.lyser.jobs.JobManager;
+import de.smartdata.lyser.rest.statistic.BatchRequest;
+import de.smartdata.lyser.rest.statistic.MetricSpec;
+import de.smartdata.lyser.rollup.RollupStore;
 import jakarta.json.*;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import javax.naming.NamingException;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import static org.eclipse.microprofile.openapi.annotations.enums.SchemaType.STRING;
@@ -42,9 +60,24 @@ import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 @Tag(name = "Statistic", description = "Statistic data")
 public class StatisticResource implements Serializable {
 
+    public static final int DEFAULT_RESULTCACHE_SIZE = 1000;
+    public static final int DEFAULT_RESULTCACHE_TTL = 300;
+    public static final long DEFAULT_JOB_WAIT = 1500;
+    public static final int DEFAULT_BATCH_PARALLEL = 4;
+
     // Stores last calculated values
-    public static Map<String, ResponseObjectBuilder> cache_count = new HashMap();
-    public static Map<String, ResponseObjectBuilder> cache_activeindex = new HashMap();
+    public static final ResultCache<ResponseObjectBuilder> RESULT_CACHE = createResultCache();
+
+    /**
+     * Creates the result cache, size and time to live (in seconds) are
+     * configured by resultcache.size and resultcache.ttl
+     */
+    private static ResultCache<ResponseObjectBuilder> createResultCache() {
+        Configuration conf = new Configuration();
+        int size = conf.getIntProperty("resultcache.size", DEFAULT_RESULTCACHE_SIZE);
+        int ttl = conf.getIntProperty("resultcache.ttl", DEFAULT_RESULTCACHE_TTL);
+        return new ResultCache<>(size, ttl * 1000L);
+    }
 
     public StatisticResource() {
         // Init logging
@@ -104,7 +137,17 @@ public class StatisticResource implements Serializable {
             return rob.toResponse();
         }
 
-        SmartDataAccessor acc = new SmartDataAccessor(smartdataurl);
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/count", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("exact", exact)
+                .with("filterColumn", filterColumn).with("filterValue", filterValue).with("ref", refColumn);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
 
         try {
             int count;
@@ -120,6 +163,7 @@ public class StatisticResource implements Serializable {
             rob.add("count", count);
             rob.add("time", LocalDateTime.now());
             rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
 
         } catch (SmartDataAccessorException ex) {
             rob.addErrorMessage("Could not fetch count: " + ex.getLocalizedMessage());
@@ -190,13 +234,23 @@ public class StatisticResource implements Serializable {
         }
 
         // SmartDataAccessor accesses the SmartData either by URL (smartdataurl) or if locally available by useing the JDBC-Resource defined in the given SmartData Instance
-        SmartDataAccessor acc = new SmartDataAccessor(smartdataurl);
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/median", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("column", column);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
         
         double median;
         try {
             median = acc.fetchMedian(smartdataurl, collection, storage, dateattribute, startDate, endDate, column);
             rob.add("median", median);
             rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
         } catch (Exception ex) {
             rob.addErrorMessage("Could not calculate median: " + ex.getLocalizedMessage());
             rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
@@ -205,6 +259,345 @@ public class StatisticResource implements Serializable {
         return rob.toResponse();
     }
 
+    @GET
+    @Path("summary")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Summary",
+            description = "Calculates multiple aggregates (count, sum, min, max, mean, stddev, median) of a column with one query")
+    @APIResponse(
+            responseCode = "200",
+            description = "Summary result")
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing parameter or unsupported aggregate")
+    @APIResponse(
+            responseCode = "404",
+            description = "Collection could not be found")
+    @APIResponse(
+            responseCode = "500",
+            description = "Internal error")
+    public Response summary(
+            @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
+            @Parameter(description = "Collections name", example = "col1") @QueryParam("collection") String collection,
+            @Parameter(description = "Storage name",
+                    schema = @Schema(type = STRING, defaultValue = "public")) @QueryParam("storage") String storage,
+            @Parameter(description = "Date attribute", example = "ts") @QueryParam("dateattribute") String dateattribute,
+            @Parameter(description = "Start date", example = "2020-12-24T18:00") @QueryParam("start") String start,
+            @Parameter(description = "End date", example = "2020-12-24T19:00") @QueryParam("end") String end,
+            @Parameter(description = "Column where to calculate the aggregates from", example = "temp") @QueryParam("column") String column,
+            @Parameter(description = "Comma separated list of aggregates",
+                    schema = @Schema(type = STRING, defaultValue = "count,min,max,mean,stddev,median")) @QueryParam("aggregates") String aggregates) {
+
+        // ResponseObjectBuilder makes it easier to build REST responses (formats json, set status codes, etc)
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (smartdataurl.startsWith("/")) {
+            smartdataurl = "http://localhost:8080" + smartdataurl;
+        }
+
+        if (collection == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >collection< is missing.");
+            return rob.toResponse();
+        }
+        if (column == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >column< is missing.");
+            return rob.toResponse();
+        }
+        if (storage == null) {
+            storage = "public";
+        }
+        if (aggregates == null || aggregates.isBlank()) {
+            aggregates = "count,min,max,mean,stddev,median";
+        }
+        List<String> aggList = new ArrayList<>();
+        for (String curAggregate : aggregates.split(",")) {
+            curAggregate = curAggregate.trim().toLowerCase();
+            if (!SmartDataAccessor.STAT_AGGREGATES.contains(curAggregate)) {
+                rob.setStatus(Response.Status.BAD_REQUEST);
+                rob.addErrorMessage("Aggregate >" + curAggregate + "< is not supported. Supported are: " + SmartDataAccessor.STAT_AGGREGATES);
+                return rob.toResponse();
+            }
+            aggList.add(curAggregate);
+        }
+
+        LocalDateTime startDate = null;
+        LocalDateTime endDate = null;
+        try {
+            if (start != null) {
+                startDate = LocalDateTime.parse(start);
+            }
+            if (end != null) {
+                endDate = LocalDateTime.parse(end);
+            }
+        } catch (DateTimeParseException ex) {
+            rob.addErrorMessage("Could not parse date: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            return rob.toResponse();
+        }
+
+        // SmartDataAccessor accesses the SmartData either by URL (smartdataurl) or if locally available by useing the JDBC-Resource defined in the given SmartData Instance
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/summary", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("column", column)
+                .withSet("aggregates", aggList);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
+
+        try {
+            Map<String, Number> stats = acc.fetchStats(smartdataurl, collection, storage, dateattribute, startDate, endDate, column, aggList);
+            for (String curAggregate : aggList) {
+                Number value = stats.get(curAggregate);
+                if (value instanceof Long) {
+                    rob.add(curAggregate, value.longValue());
+                } else if (value != null) {
+                    rob.add(curAggregate, value.doubleValue());
+                }
+            }
+            rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
+        } catch (Exception ex) {
+            rob.addErrorMessage("Could not calculate summary: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+        }
+
+        return rob.toResponse();
+    }
+
+    @GET
+    @Path("percentiles")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Percentiles",
+            description = "Calculates multiple percentiles of a column with one scan, either exact or approximate")
+    @APIResponse(
+            responseCode = "200",
+            description = "Percentiles result")
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing or invalid parameter")
+    @APIResponse(
+            responseCode = "404",
+            description = "Collection could not be found")
+    @APIResponse(
+            responseCode = "500",
+            description = "Internal error")
+    public Response percentiles(
+            @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
+            @Parameter(description = "Collections name", example = "col1") @QueryParam("collection") String collection,
+            @Parameter(description = "Storage name",
+                    schema = @Schema(type = STRING, defaultValue = "public")) @QueryParam("storage") String storage,
+            @Parameter(description = "Date attribute", example = "ts") @QueryParam("dateattribute") String dateattribute,
+            @Parameter(description = "Start date", example = "2020-12-24T18:00") @QueryParam("start") String start,
+            @Parameter(description = "End date", example = "2020-12-24T19:00") @QueryParam("end") String end,
+            @Parameter(description = "Column where to calculate the percentiles from", example = "temp") @QueryParam("column") String column,
+            @Parameter(description = "Comma separated list of quantiles between 0 and 1",
+                    schema = @Schema(type = STRING, defaultValue = "0.5,0.95,0.99")) @QueryParam("quantiles") String quantiles,
+            @Parameter(description = "Calculate approximate percentiles with a sketch in constant memory",
+                    schema = @Schema(type = STRING, defaultValue = "false")) @QueryParam("approximate") boolean approximate,
+            @Parameter(description = "Rank error bound of approximate percentiles", example = "0.01") @QueryParam("epsilon") Double epsilon) {
+
+        // ResponseObjectBuilder makes it easier to build REST responses (formats json, set status codes, etc)
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (smartdataurl.startsWith("/")) {
+            smartdataurl = "http://localhost:8080" + smartdataurl;
+        }
+
+        if (collection == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >collection< is missing.");
+            return rob.toResponse();
+        }
+        if (column == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >column< is missing.");
+            return rob.toResponse();
+        }
+        if (storage == null) {
+            storage = "public";
+        }
+        if (quantiles == null || quantiles.isBlank()) {
+            quantiles = "0.5,0.95,0.99";
+        }
+        String[] quantileStrs = quantiles.split(",");
+        double[] quantileValues = new double[quantileStrs.length];
+        for (int i = 0; i < quantileStrs.length; i++) {
+            try {
+                quantileValues[i] = Double.parseDouble(quantileStrs[i].trim());
+            } catch (NumberFormatException ex) {
+                quantileValues[i] = Double.NaN;
+            }
+            if (!(quantileValues[i] >= 0 && quantileValues[i] <= 1)) {
+                rob.setStatus(Response.Status.BAD_REQUEST);
+                rob.addErrorMessage("Quantile >" + quantileStrs[i] + "< is not a number between 0 and 1.");
+                return rob.toResponse();
+            }
+        }
+        if (epsilon != null && !(epsilon > 0 && epsilon < 1)) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >epsilon< must be between 0 and 1.");
+            return rob.toResponse();
+        }
+
+        LocalDateTime startDate = null;
+        LocalDateTime endDate = null;
+        try {
+            if (start != null) {
+                startDate = LocalDateTime.parse(start);
+            }
+            if (end != null) {
+                endDate = LocalDateTime.parse(end);
+            }
+        } catch (DateTimeParseException ex) {
+            rob.addErrorMessage("Could not parse date: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            return rob.toResponse();
+        }
+
+        // SmartDataAccessor accesses the SmartData either by URL (smartdataurl) or if locally available by useing the JDBC-Resource defined in the given SmartData Instance
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/percentiles", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("column", column)
+                .with("quantiles", quantiles.replace(" ", "")).with("approximate", approximate).with("epsilon", epsilon);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
+
+        try {
+            double[] values = acc.fetchPercentiles(smartdataurl, collection, storage, dateattribute, startDate, endDate, column, quantileValues, approximate, epsilon);
+            ResponseListBuilder percentiles = new ResponseListBuilder();
+            for (int i = 0; i < quantileValues.length; i++) {
+                ResponseObjectBuilder percentile = new ResponseObjectBuilder();
+                percentile.add("quantile", quantileValues[i]);
+                if (!Double.isNaN(values[i])) {
+                    percentile.add("value", values[i]);
+                }
+                percentiles.add(percentile);
+            }
+            rob.add("percentiles", percentiles);
+            rob.add("approximate", approximate);
+            rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
+        } catch (Exception ex) {
+            rob.addErrorMessage("Could not calculate percentiles: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+        }
+
+        return rob.toResponse();
+    }
+
+    @GET
+    @Path("distinct")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Distinct",
+            description = "Counts the distinct values of a column, either exact or approximate with HyperLogLog")
+    @APIResponse(
+            responseCode = "200",
+            description = "Distinct count result")
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing parameter")
+    @APIResponse(
+            responseCode = "404",
+            description = "Collection could not be found")
+    @APIResponse(
+            responseCode = "500",
+            description = "Internal error")
+    public Response distinct(
+            @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
+            @Parameter(description = "Collections name", example = "col1") @QueryParam("collection") String collection,
+            @Parameter(description = "Storage name",
+                    schema = @Schema(type = STRING, defaultValue = "public")) @QueryParam("storage") String storage,
+            @Parameter(description = "Date attribute", example = "ts") @QueryParam("dateattribute") String dateattribute,
+            @Parameter(description = "Start date", example = "2020-12-24T18:00") @QueryParam("start") String start,
+            @Parameter(description = "End date", example = "2020-12-24T19:00") @QueryParam("end") String end,
+            @Parameter(description = "Column where to count distinct values", example = "device_id") @QueryParam("column") String column,
+            @Parameter(description = "Estimate the count with HyperLogLog",
+                    schema = @Schema(type = STRING, defaultValue = "false")) @QueryParam("approximate") boolean approximate,
+            @Parameter(description = "Reference column containing table names", example = "data_collection") @QueryParam("ref") String refColumn) {
+
+        // ResponseObjectBuilder makes it easier to build REST responses (formats json, set status codes, etc)
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (smartdataurl.startsWith("/")) {
+            smartdataurl = "http://localhost:8080" + smartdataurl;
+        }
+
+        if (collection == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >collection< is missing.");
+            return rob.toResponse();
+        }
+        if (column == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >column< is missing.");
+            return rob.toResponse();
+        }
+        if (storage == null) {
+            storage = "public";
+        }
+        if (refColumn != null && refColumn.isEmpty()) {
+            refColumn = null;
+        }
+
+        LocalDateTime startDate = null;
+        LocalDateTime endDate = null;
+        try {
+            if (start != null) {
+                startDate = LocalDateTime.parse(start);
+            }
+            if (end != null) {
+                endDate = LocalDateTime.parse(end);
+            }
+        } catch (DateTimeParseException ex) {
+            rob.addErrorMessage("Could not parse date: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            return rob.toResponse();
+        }
+
+        // SmartDataAccessor accesses the SmartData either by URL (smartdataurl) or if locally available by useing the JDBC-Resource defined in the given SmartData Instance
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/distinct", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("column", column)
+                .with("approximate", approximate).with("ref", refColumn);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
+
+        try {
+            long distinct = acc.fetchDistinctCount(smartdataurl, collection, storage, dateattribute, startDate, endDate, column, approximate, refColumn);
+            rob.add("distinct", distinct);
+            rob.add("approximate", approximate);
+            rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
+        } catch (Exception ex) {
+            rob.addErrorMessage("Could not count distinct values: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+        }
+
+        return rob.toResponse();
+    }
+
     @GET
     @Path("minmaxspan")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -235,7 +628,7 @@ public class StatisticResource implements Serializable {
         ResponseObjectBuilder rob = new ResponseObjectBuilder();
 
         // SmartDataAccessor accesses the SmartData either by URL (smartdataurl) or if locally available by useing the JDBC-Resource defined in the given SmartData Instance
-        SmartDataAccessor acc = new SmartDataAccessor(smartdataurl);
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
 
         if (smartdataurl.startsWith("/")) {
             smartdataurl = "http://localhost:8080" + smartdataurl;
@@ -247,8 +640,8 @@ public class StatisticResource implements Serializable {
             return rob.toResponse();
         }
 
-        LocalDateTime startDate = LocalDateTime.MIN;
-        LocalDateTime endDate = LocalDateTime.MAX;
+        LocalDateTime startDate = null;
+        LocalDateTime endDate = null;
         try {
             if (start != null) {
                 startDate = LocalDateTime.parse(start);
@@ -268,14 +661,29 @@ public class StatisticResource implements Serializable {
             return rob.toResponse();
         }
 
-        double min, max, span;
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/minmaxspan", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("column", column);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
         try {
-            min = acc.fetchMin(smartdataurl, collection, storage, dateattribute, startDate, endDate, column);
-            rob.add("min", min);
-            max = acc.fetchMax(smartdataurl, collection, storage, dateattribute, startDate, endDate, column);
-            rob.add("max", max);
-            rob.add("span", max-min);
+            // Min and max are calculated within one query
+            Map<String, Number> stats = acc.fetchStats(smartdataurl, collection, storage, dateattribute, startDate, endDate, column, List.of("min", "max"));
+            if (stats.containsKey("min") && stats.containsKey("max")) {
+                double min = stats.get("min").doubleValue();
+                double max = stats.get("max").doubleValue();
+                rob.add("min", min);
+                rob.add("max", max);
+                rob.add("span", max - min);
+            } else {
+                rob.addWarningMessage("There are no values in >" + column + "< to calculate min max span from.");
+            }
             rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
         } catch (Exception ex) {
             rob.addErrorMessage("Could not calculate min max span: " + ex.getClass().getSimpleName() + ": " + ex.getLocalizedMessage());
             rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
@@ -294,12 +702,18 @@ public class StatisticResource implements Serializable {
     @APIResponse(
             responseCode = "200",
             description = "Result")
+    @APIResponse(
+            responseCode = "202",
+            description = "Calculation is still running, result can be requested with the returned job id")
     @APIResponse(
             responseCode = "404",
             description = "One of the collections could not be found")
     @APIResponse(
             responseCode = "500",
             description = "Internal error")
+    @APIResponse(
+            responseCode = "503",
+            description = "Too many calculations are waiting")
     public Response activindex(
             @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
             @Parameter(description = "Collections name", example = "col1,col2") @QueryParam("collections") String collections,
@@ -309,35 +723,43 @@ public class StatisticResource implements Serializable {
             @Parameter(description = "Start date", example = "2020-12-24T18:00") @QueryParam("start") String start,
             @Parameter(description = "End date", example = "2020-12-24T19:00") @QueryParam("end") String end,
             @Parameter(description = "Last X hours", example = "72") @QueryParam("lasthours") int lasthours,
-            @Parameter(description = "Threshold minimum datasets", example = "10") @QueryParam("end") Integer threshold,
-            @Parameter(description = "Exact calculation", example = "true") @QueryParam("exact") boolean exact) {
+            @Parameter(description = "Threshold minimum datasets", example = "10") @QueryParam("threshold") Integer threshold,
+            @Parameter(description = "Ignored, the activity is always checked with exact probes", deprecated = true) @QueryParam("exact") boolean exact,
+            @Parameter(description = "Milliseconds to wait for the result before answering with the job id",
+                    schema = @Schema(defaultValue = "1500")) @QueryParam("wait") Long wait) {
 
-        ActivindexThread at = new ActivindexThread(smartdataurl, collections, storage, dateattribute, start, end, lasthours, threshold, exact);
-        at.start();
-
-        try {
-            System.out.println("Now sleep for 1500 ms");
-            Thread.sleep(1500);
-        } catch (Exception ex) {
-            System.err.println("Error while sleep: " + ex.getLocalizedMessage());
+        // Check if data is available in cache
+        QueryFingerprint fingerprint = ActivindexJob.createFingerprint(smartdataurl, collections, storage, dateattribute, start, end, lasthours, threshold);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
         }
-        System.out.println("Wakeing up");
 
-        // Check if data is available in cache
-        if (cache_activeindex.containsKey(smartdataurl + collections)) {
-            System.out.println("Useing activindex from cache");
-            return cache_activeindex.get(smartdataurl + collections).toResponse();
-        } else {
+        Job job;
+        try {
+            job = JobManager.getInstance().submit(new ActivindexJob(smartdataurl, collections, storage, dateattribute, start, end, lasthours, threshold));
+        } catch (RejectedExecutionException ex) {
             ResponseObjectBuilder rob = new ResponseObjectBuilder();
-            rob.add("inactive", 0);
-            rob.add("active", 0);
-            rob.add("inactives", new ResponseListBuilder());
-            rob.add("actives", new ResponseListBuilder());
-            rob.add("time", LocalDateTime.now());
-            rob.addWarningMessage("Statistic calculation needs more time.");
-            rob.setStatus(Response.Status.ACCEPTED);
+            rob.addErrorMessage("Too many statistic calculations are waiting, try again later.");
+            rob.setStatus(Response.Status.SERVICE_UNAVAILABLE);
             return rob.toResponse();
         }
+
+        // Wait a short time, small calculations are answered directly
+        ResponseObjectBuilder result = job.await(wait != null ? wait : DEFAULT_JOB_WAIT);
+        if (result != null) {
+            return result.toResponse();
+        }
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+        rob.add("job", job.getId());
+        rob.add("inactive", 0);
+        rob.add("active", 0);
+        rob.add("inactives", new ResponseListBuilder());
+        rob.add("actives", new ResponseListBuilder());
+        rob.add("time", LocalDateTime.now());
+        rob.addWarningMessage("Statistic calculation needs more time. Get the result from jobs/" + job.getId());
+        rob.setStatus(Response.Status.ACCEPTED);
+        return rob.toResponse();
     }
 
     @GET
@@ -356,17 +778,25 @@ public class StatisticResource implements Serializable {
     @APIResponse(
             responseCode = "500",
             description = "Internal error")
-    public Response whole(
+    @APIResponse(
+            responseCode = "503",
+            description = "Calculation took too long")
+    public void whole(
+            @Suspended AsyncResponse asyncResponse,
             @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
             @Parameter(description = "Collection name", example = "col1") @QueryParam("collection") String collection,
             @Parameter(description = "Storage name", schema = @Schema(type = STRING, defaultValue = "public")) @QueryParam("storage") String storage,
             @Parameter(description = "Any filter statement accepted by SmartData") @QueryParam("filter") List<String> filters,
             @Parameter(description = "Date attribute", example = "ts") @QueryParam("dateattribute") String dateattribute,
             @Parameter(description = "Exact calculation", example = "true") @QueryParam("exact") boolean exact) {
+        AsyncRequestExecutor.resume(asyncResponse, () -> this.calculateWhole(smartdataurl, collection, storage, filters, dateattribute, exact));
+    }
+
+    private Response calculateWhole(String smartdataurl, String collection, String storage, List<String> filters, String dateattribute, boolean exact) {
 
         ResponseObjectBuilder rob = new ResponseObjectBuilder();
 
-        SmartDataAccessor acc = new SmartDataAccessor(smartdataurl);
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
 
         if (smartdataurl.startsWith("/")) {
             smartdataurl = "http://localhost:8080" + smartdataurl;
@@ -479,7 +909,17 @@ public class StatisticResource implements Serializable {
             return rob.toResponse();
         }
 
-        SmartDataAccessor acc = new SmartDataAccessor(smartdataurl);
+        // Answer repeated queries from cache
+        QueryFingerprint fingerprint = QueryFingerprint.of("statistic/mean", smartdataurl)
+                .with("collection", collection).with("storage", storage)
+                .with("dateattribute", dateattribute).with("start", start).with("end", end).with("column", column)
+                .with("filterColumn", filterColumn).with("filterValue", filterValue).with("ref", refColumn);
+        ResponseObjectBuilder cached = RESULT_CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached.toResponse();
+        }
+
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
 
         try {
             double mean;
@@ -499,6 +939,7 @@ public class StatisticResource implements Serializable {
 
             rob.add("mean", mean);
             rob.setStatus(Response.Status.OK);
+            RESULT_CACHE.put(fingerprint, rob);
         } catch (Exception ex) {
             rob.addErrorMessage("Could not calculate mean: " + ex.getLocalizedMessage());
             rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
@@ -506,4 +947,196 @@ public class StatisticResource implements Serializable {
 
         return rob.toResponse();
     }
+
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Batch statistics",
+            description = "Calculates multiple metrics with one call. Metrics on the same collection and range are calculated with one scan, "
+            + "different collections and ranges are calculated in parallel.")
+    @APIResponse(
+            responseCode = "200",
+            description = "List of results in order of the requested metrics")
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing parameters")
+    public void batch(@Suspended AsyncResponse asyncResponse, BatchRequest request) {
+        AsyncRequestExecutor.resume(asyncResponse, () -> this.calculateBatch(request));
+    }
+
+    /**
+     * Calculates the metrics of a batch request
+     *
+     * @param request Batch request
+     * @return Response with the results in order of the metrics
+     */
+    private Response calculateBatch(BatchRequest request) {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (request == null || request.smartdataurl == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >smartdataurl< is missing.");
+            return rob.toResponse();
+        }
+        if (request.metrics == null || request.metrics.isEmpty()) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >metrics< is missing.");
+            return rob.toResponse();
+        }
+
+        String smartdataurl = request.smartdataurl;
+        SmartDataAccessor acc = SmartDataRegistry.getInstance().createAccessor(smartdataurl);
+        if (smartdataurl.startsWith("/")) {
+            smartdataurl = "http://localhost:8080" + smartdataurl;
+        }
+
+        // Group metrics by collection and range, each group is calculated with one scan
+        int size = request.metrics.size();
+        String[] errors = new String[size];
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            MetricSpec curSpec = request.metrics.get(i);
+            if (curSpec.metric == null || curSpec.collection == null) {
+                errors[i] = "Parameter >metric< or >collection< is missing.";
+                continue;
+            }
+            if (!curSpec.metric.equals("minmaxspan") && !SmartDataAccessor.STAT_AGGREGATES.contains(curSpec.metric)) {
+                errors[i] = "Metric >" + curSpec.metric + "< is not supported.";
+                continue;
+            }
+            if (curSpec.column == null && !curSpec.metric.equals("count")) {
+                errors[i] = "Parameter >column< is missing.";
+                continue;
+            }
+            if (curSpec.storage == null) {
+                curSpec.storage = "public";
+            }
+            String groupKey = curSpec.collection + "|" + curSpec.storage + "|" + curSpec.dateattribute + "|" + curSpec.start + "|" + curSpec.end;
+            groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(i);
+        }
+
+        // Calculate groups in parallel
+        List<List<Integer>> groupList = new ArrayList<>(groups.values());
+        List<Map<String, Map<String, Number>>> groupStats = new ArrayList<>(Collections.nCopies(groupList.size(), null));
+        int parallel = SmartDataRegistry.getInstance().getSmartDataInstance(smartdataurl).getIntProperty("batch.parallel", DEFAULT_BATCH_PARALLEL);
+        int workers = Math.max(1, Math.min(parallel, groupList.size()));
+        final String url = smartdataurl;
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int firstGroup = w;
+            futures.add(JobManager.getInstance().getWorkerExecutor().submit(() -> {
+                for (int g = firstGroup; g < groupList.size(); g += workers) {
+                    List<Integer> curGroup = groupList.get(g);
+                    try {
+                        groupStats.set(g, this.calculateGroup(acc, url, request.metrics, curGroup));
+                    } catch (SmartDataAccessorException | DateTimeParseException ex) {
+                        for (int i : curGroup) {
+                            errors[i] = ex.getLocalizedMessage();
+                        }
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> curFuture : futures) {
+                curFuture.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            rob.addErrorMessage("Interrupted while calculating batch statistics.");
+            rob.setStatus(Response.Status.SERVICE_UNAVAILABLE);
+            return rob.toResponse();
+        } catch (ExecutionException ex) {
+            rob.addErrorMessage("Could not calculate batch statistics: " + ex.getLocalizedMessage());
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            return rob.toResponse();
+        } finally {
+            // Stop workers that are still running after a failure
+            for (Future<?> curFuture : futures) {
+                curFuture.cancel(true);
+            }
+        }
+
+        // Build results in order of the requested metrics
+        ResponseObjectBuilder[] results = new ResponseObjectBuilder[size];
+        for (int g = 0; g < groupList.size(); g++) {
+            Map<String, Map<String, Number>> stats = groupStats.get(g);
+            for (int i : groupList.get(g)) {
+                if (stats == null) {
+                    continue;
+                }
+                MetricSpec curSpec = request.metrics.get(i);
+                Map<String, Number> columnStats = stats.get(statColumn(curSpec));
+                ResponseObjectBuilder result = new ResponseObjectBuilder();
+                if (curSpec.metric.equals("minmaxspan")) {
+                    if (columnStats.containsKey("min") && columnStats.containsKey("max")) {
+                        double min = columnStats.get("min").doubleValue();
+                        double max = columnStats.get("max").doubleValue();
+                        result.add("min", min);
+                        result.add("max", max);
+                        result.add("span", max - min);
+                    }
+                } else if (columnStats.containsKey(curSpec.metric)) {
+                    result.add("value", columnStats.get(curSpec.metric));
+                }
+                results[i] = result;
+            }
+        }
+        ResponseListBuilder resultList = new ResponseListBuilder();
+        for (int i = 0; i < size; i++) {
+            MetricSpec curSpec = request.metrics.get(i);
+            ResponseObjectBuilder result = results[i] != null ? results[i] : new ResponseObjectBuilder();
+            result.add("id", curSpec.id != null ? curSpec.id : String.valueOf(i));
+            result.add("metric", curSpec.metric);
+            if (errors[i] != null) {
+                result.add("error", errors[i]);
+            }
+            resultList.add(result);
+        }
+        rob.add("results", resultList);
+        rob.setStatus(Response.Status.OK);
+        return rob.toResponse();
+    }
+
+    /**
+     * Calculates all metrics of a group of the same collection and range
+     *
+     * @param acc Accessor to use
+     * @param smartdataurl SmartData URL
+     * @param metrics All requested metrics
+     * @param group Indices of the metrics in the group
+     * @return Aggregates per column
+     */
+    private Map<String, Map<String, Number>> calculateGroup(SmartDataAccessor acc, String smartdataurl, List<MetricSpec> metrics, List<Integer> group) throws SmartDataAccessorException {
+        MetricSpec first = metrics.get(group.get(0));
+        LocalDateTime startDate = first.start != null ? LocalDateTime.parse(first.start) : null;
+        LocalDateTime endDate = first.end != null ? LocalDateTime.parse(first.end) : null;
+
+        Map<String, Set<String>> columnAggregates = new LinkedHashMap<>();
+        for (int i : group) {
+            MetricSpec curSpec = metrics.get(i);
+            String column = statColumn(curSpec);
+            Set<String> aggregates = columnAggregates.computeIfAbsent(column, k -> new LinkedHashSet<>());
+            if (curSpec.metric.equals("minmaxspan")) {
+                aggregates.add("min");
+                aggregates.add("max");
+            } else {
+                aggregates.add(curSpec.metric);
+            }
+        }
+        return acc.fetchStats(smartdataurl, first.collection, first.storage, first.dateattribute, startDate, endDate, columnAggregates);
+    }
+
+    /**
+     * Gets the column a metric is calculated from. Counts always count all
+     * datasets, so that they match statistic/count.
+     */
+    private static String statColumn(MetricSpec spec) {
+        if (spec.column == null || spec.metric.equals("count")) {
+            return RollupStore.COUNT_ALL;
+        }
+        return spec.column;
+    }
 }
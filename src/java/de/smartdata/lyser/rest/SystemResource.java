@@ -3,12 +3,20 @@ package de.smartdata.lyser.rest;
 import de.fhbielefeld.scl.logger.Logger;
 import de.fhbielefeld.scl.logger.LoggerException;
 import de.fhbielefeld.scl.rest.util.ResponseObjectBuilder;
+import de.fhbielefeld.smartuser.annotations.SmartUserAuth;
+import de.smartdata.lyser.cache.ResultCache;
 import de.smartdata.lyser.config.Configuration;
+import de.smartdata.lyser.data.CatalogCache;
+import de.smartdata.lyser.data.SmartDataAccessorException;
+import de.smartdata.lyser.data.SmartDataRegistry;
+import de.smartdata.lyser.rollup.RollupStore;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.io.IOException;
@@ -22,6 +30,7 @@ import java.util.Map.Entry;
 import javax.naming.NamingException;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 
@@ -220,4 +229,168 @@ public class SystemResource {
         rob.setStatus(Response.Status.OK);
         return rob.toResponse();
     }
+
+    @GET
+    @Path("catalogcache")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Get catalog cache statistics",
+            description = "Gets size, time to live and hit / miss counters of the catalog cache of a SmartData instance.")
+    @APIResponse(
+            responseCode = "200",
+            description = "Object with cache statistics",
+            content = @Content(
+                    mediaType = "application/json",
+                    example = "{\"size\" : 3, \"ttl\" : 300, \"hits\" : 120, \"misses\" : 3}"
+            ))
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing parameter")
+    public Response getCatalogCache(
+            @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl) {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (smartdataurl == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >smartdataurl< is missing.");
+            return rob.toResponse();
+        }
+
+        CatalogCache catalog = SmartDataRegistry.getInstance().getSmartDataInstance(smartdataurl).getCatalogCache();
+        rob.add("size", catalog.getSize());
+        rob.add("ttl", catalog.getTtlMillis() / 1000);
+        rob.add("hits", catalog.getHits());
+        rob.add("misses", catalog.getMisses());
+        rob.setStatus(Response.Status.OK);
+
+        return rob.toResponse();
+    }
+
+    @DELETE
+    @Path("catalogcache")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Invalidate catalog cache",
+            description = "Removes cached catalog metadata of a SmartData instance, optionally only of one storage.")
+    @APIResponse(
+            responseCode = "200",
+            description = "Cache invalidated")
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing parameter")
+    public Response invalidateCatalogCache(
+            @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
+            @Parameter(description = "Storage name (all storages if not given)", example = "public") @QueryParam("storage") String storage) {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (smartdataurl == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >smartdataurl< is missing.");
+            return rob.toResponse();
+        }
+
+        CatalogCache catalog = SmartDataRegistry.getInstance().getSmartDataInstance(smartdataurl).getCatalogCache();
+        if (storage != null) {
+            catalog.invalidate(storage);
+        } else {
+            catalog.invalidate();
+        }
+        rob.setStatus(Response.Status.OK);
+
+        return rob.toResponse();
+    }
+
+    @DELETE
+    @Path("rollup")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Invalidate rollup",
+            description = "Removes the rollup buckets of a collection, they are rebuild in background. Needed after changes to datasets older than rollup.latehours.")
+    @APIResponse(
+            responseCode = "200",
+            description = "Rollup invalidated")
+    @APIResponse(
+            responseCode = "400",
+            description = "Missing parameter or rollups not enabled")
+    @APIResponse(
+            responseCode = "500",
+            description = "Error while removing the rollup")
+    public Response invalidateRollup(
+            @Parameter(description = "SmartData URL", required = true, example = "/SmartData") @QueryParam("smartdataurl") String smartdataurl,
+            @Parameter(description = "Collections name", required = true, example = "col1") @QueryParam("collection") String collection,
+            @Parameter(description = "Storage name", example = "public") @QueryParam("storage") String storage) {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        if (smartdataurl == null || collection == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Parameter >smartdataurl< and >collection< are required.");
+            return rob.toResponse();
+        }
+        if (storage == null) {
+            storage = "public";
+        }
+
+        RollupStore rollups = SmartDataRegistry.getInstance().getSmartDataInstance(smartdataurl).getRollupStore();
+        if (rollups == null) {
+            rob.setStatus(Response.Status.BAD_REQUEST);
+            rob.addErrorMessage("Rollups are not enabled for >" + smartdataurl + "<.");
+            return rob.toResponse();
+        }
+        try {
+            rollups.invalidate(storage, collection);
+            rob.setStatus(Response.Status.OK);
+        } catch (SmartDataAccessorException ex) {
+            rob.setStatus(Response.Status.INTERNAL_SERVER_ERROR);
+            rob.addErrorMessage(ex.getLocalizedMessage());
+        }
+
+        return rob.toResponse();
+    }
+
+    @GET
+    @Path("resultcache")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Get result cache statistics",
+            description = "Gets size, bounds and hit / miss / eviction counters of the statistic result cache.")
+    @APIResponse(
+            responseCode = "200",
+            description = "Object with cache statistics",
+            content = @Content(
+                    mediaType = "application/json",
+                    example = "{\"size\" : 12, \"maxsize\" : 1000, \"ttl\" : 300, \"hits\" : 40, \"misses\" : 12, \"evictions\" : 0, \"expirations\" : 2}"
+            ))
+    public Response getResultCache() {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        ResultCache<ResponseObjectBuilder> cache = StatisticResource.RESULT_CACHE;
+        rob.add("size", cache.getSize());
+        rob.add("maxsize", cache.getMaxEntries());
+        rob.add("ttl", cache.getTtlMillis() / 1000);
+        rob.add("hits", cache.getHits());
+        rob.add("misses", cache.getMisses());
+        rob.add("evictions", cache.getEvictions());
+        rob.add("expirations", cache.getExpirations());
+        rob.setStatus(Response.Status.OK);
+
+        return rob.toResponse();
+    }
+
+    @DELETE
+    @Path("resultcache")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SmartUserAuth
+    @Operation(summary = "Clear result cache",
+            description = "Removes all cached statistic results.")
+    @APIResponse(
+            responseCode = "200",
+            description = "Cache cleared")
+    public Response clearResultCache() {
+        ResponseObjectBuilder rob = new ResponseObjectBuilder();
+
+        StatisticResource.RESULT_CACHE.clear();
+        rob.setStatus(Response.Status.OK);
+
+        return rob.toResponse();
+    }
 }
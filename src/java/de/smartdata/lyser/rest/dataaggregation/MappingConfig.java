@@ -17,4 +17,7 @@ public class MappingConfig {
 
     @Schema(description = "Target attribute name", example = "temperature")
     public String target_attr;
+
+    @Schema(description = "Aggregate function for the values of a cluster. Numeric values: avg (default), sum, min, max, count, first, last, variance, stddev, median. Text values: median (default), first, last", example = "avg")
+    public String aggregate;
 }
\ No newline at end of file
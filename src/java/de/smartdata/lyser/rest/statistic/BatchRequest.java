@@ -0,0 +1,19 @@
+package de.smartdata.lyser.rest.statistic;
+
+import java.util.List;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+/**
+ * Request for calculating multiple statistic metrics with one call
+ *
+ * @author Florian Fehring
+ */
+@Schema(description = "Request body for batch statistics")
+public class BatchRequest {
+
+    @Schema(description = "SmartData service URL", example = "/SmartData")
+    public String smartdataurl;
+
+    @Schema(description = "Metrics to calculate")
+    public List<MetricSpec> metrics;
+}
@@ -0,0 +1,36 @@
+package de.smartdata.lyser.rest.statistic;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+/**
+ * Definition of one metric within a batch statistic request
+ *
+ * @author Florian Fehring
+ */
+@Schema(description = "Definition of a single metric")
+public class MetricSpec {
+
+    @Schema(description = "Id of the metric, returned with its result", example = "temp_mean")
+    public String id;
+
+    @Schema(description = "Metric to calculate: count, sum, min, max, mean, stddev, median or minmaxspan", example = "mean")
+    public String metric;
+
+    @Schema(description = "Collection name", example = "col1")
+    public String collection;
+
+    @Schema(description = "Storage name", example = "public")
+    public String storage;
+
+    @Schema(description = "Name of the date attribute", example = "ts")
+    public String dateattribute;
+
+    @Schema(description = "Start timestamp", example = "2020-12-24T18:00")
+    public String start;
+
+    @Schema(description = "End timestamp", example = "2020-12-24T19:00")
+    public String end;
+
+    @Schema(description = "Column to calculate the metric from, not used by count that always counts all datasets", example = "temp")
+    public String column;
+}
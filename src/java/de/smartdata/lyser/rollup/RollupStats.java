@@ -0,0 +1,90 @@
+package de.smartdata.lyser.rollup;
+
+/**
+ * Partial aggregates of a column over a time range. Partials of disjoint
+ * ranges are combined with merge().
+ *
+ * @author Florian Fehring
+ */
+public class RollupStats {
+
+    private long count = 0;
+    private double sum = 0.0;
+    private double sumSquares = 0.0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public RollupStats() {
+
+    }
+
+    public RollupStats(long count, double sum, double sumSquares, double min, double max) {
+        this.count = count;
+        this.sum = sum;
+        this.sumSquares = sumSquares;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Adds the aggregates of an other range
+     *
+     * @param other Aggregates of a range not overlapping with this one
+     */
+    public void merge(RollupStats other) {
+        this.count += other.count;
+        this.sum += other.sum;
+        this.sumSquares += other.sumSquares;
+        if (!Double.isNaN(other.min) && (Double.isNaN(this.min) || other.min < this.min)) {
+            this.min = other.min;
+        }
+        if (!Double.isNaN(other.max) && (Double.isNaN(this.max) || other.max > this.max)) {
+            this.max = other.max;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getSumSquares() {
+        return sumSquares;
+    }
+
+    /**
+     * @return Minimum or NaN if there are no values
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return Maximum or NaN if there are no values
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return Arithmetic mean or NaN if there are no values
+     */
+    public double getMean() {
+        return this.count == 0 ? Double.NaN : this.sum / this.count;
+    }
+
+    /**
+     * @return Sample standard deviation or NaN if there are less than two
+     * values
+     */
+    public double getSampleStdDeviation() {
+        if (this.count < 2) {
+            return Double.NaN;
+        }
+        double variance = (this.sumSquares - this.sum * this.sum / this.count) / (this.count - 1);
+        return Math.sqrt(Math.max(0.0, variance));
+    }
+}
@@ -0,0 +1,430 @@
+package de.smartdata.lyser.rollup;
+
+import de.fhbielefeld.scl.logger.Logger;
+import de.fhbielefeld.scl.logger.message.Message;
+import de.fhbielefeld.scl.logger.message.MessageLevel;
+import de.smartdata.lyser.config.ApplicationExecutors;
+import de.smartdata.lyser.data.SmartDataAccessorException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Keeps partial aggregates (count, sum, sum of squares, min, max) of columns
+ * per hour and per day in a side schema. Ranges are answered from whole
+ * buckets, only the ragged edges at start and end of the range and the time
+ * after the last processed hour are scanned from the collection itself.
+ *
+ * Queries only read. Buckets are added in background, triggered by queries
+ * when a new hour was completed. Each refresh aggregates the last
+ * lateHours processed hours again, so datasets inserted late into these
+ * hours are taken into account. Older corrections need an invalidate.
+ *
+ * @author Florian Fehring
+ */
+public class RollupStore {
+
+    // Column name used for counting all datasets
+    public static final String COUNT_ALL = "*";
+    // Number of processed hours aggregated again on every refresh
+    public static final int DEFAULT_LATE_HOURS = 24;
+    // Maximum number of rollups waiting for a refresh
+    private static final int REFRESH_QUEUE = 100;
+    // Condition selecting one rollup, values are bound with bind()
+    private static final String KEY_CONDITION = "storage = ? AND collection = ? AND dateattr = ? AND col = ?";
+
+    private static ExecutorService refreshExecutor = null;
+
+    private final DataSource ds;
+    private final String schema;
+    private final int lateHours;
+    private final Set<String> pendingRefreshes = ConcurrentHashMap.newKeySet();
+    private volatile boolean initialized = false;
+
+    /**
+     * Creates a rollup store
+     *
+     * @param ds DataSource of the SmartData instance
+     * @param schema Name of the schema holding the rollup tables
+     * @param lateHours Number of processed hours aggregated again on refresh
+     */
+    public RollupStore(DataSource ds, String schema, int lateHours) {
+        this.ds = ds;
+        this.schema = schema;
+        this.lateHours = Math.max(0, lateHours);
+    }
+
+    /**
+     * Gets the aggregates of a column in a range. If the rollup misses
+     * completed hours a refresh is started in background, the missing time is
+     * scanned from the collection meanwhile.
+     *
+     * @param storage Storage name (Schemaname)
+     * @param collection Collections name (Tablename)
+     * @param dateattr Name of the attribute that holds date information
+     * @param column Name of the column or COUNT_ALL for counting datasets
+     * @param start Start date (inclusive)
+     * @param end End date (inclusive)
+     * @return Aggregates of the range or null if the rollup is not build yet
+     * or the range does not contain a whole processed hour, so that a scan of
+     * the collection is cheaper
+     * @throws SmartDataAccessorException
+     */
+    public RollupStats query(String storage, String collection, String dateattr, String column, LocalDateTime start, LocalDateTime end) throws SmartDataAccessorException {
+        try (Connection con = this.ds.getConnection()) {
+            this.init(con);
+            LocalDateTime processedUntil = null;
+            try (PreparedStatement ps = con.prepareStatement("SELECT processed_until FROM " + this.table("rollup_state") + " WHERE " + KEY_CONDITION)) {
+                bind(ps, storage, collection, dateattr, column);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        processedUntil = rs.getTimestamp(1).toLocalDateTime();
+                    }
+                }
+            }
+            if (processedUntil == null || processedUntil.isBefore(LocalDateTime.now().truncatedTo(ChronoUnit.HOURS))) {
+                this.scheduleRefresh(storage, collection, dateattr, column);
+            }
+            if (processedUntil == null) {
+                return null;
+            }
+
+            LocalDateTime innerStart = ceil(start, ChronoUnit.HOURS);
+            LocalDateTime innerEnd = end.truncatedTo(ChronoUnit.HOURS);
+            if (processedUntil.isBefore(innerEnd)) {
+                innerEnd = processedUntil;
+            }
+            if (!innerStart.isBefore(innerEnd)) {
+                return null;
+            }
+            // Whole days are taken from day buckets, the rest from hour buckets
+            LocalDateTime dayStart = ceil(innerStart, ChronoUnit.DAYS);
+            LocalDateTime dayEnd = innerEnd.truncatedTo(ChronoUnit.DAYS);
+            String bucketCond;
+            List<LocalDateTime> bounds = new ArrayList<>();
+            if (dayStart.isBefore(dayEnd)) {
+                bucketCond = "(granularity = 'day' AND bucket >= ? AND bucket < ?)"
+                        + " OR (granularity = 'hour' AND ((bucket >= ? AND bucket < ?) OR (bucket >= ? AND bucket < ?)))";
+                bounds.addAll(List.of(dayStart, dayEnd, innerStart, dayStart, dayEnd, innerEnd));
+            } else {
+                bucketCond = "granularity = 'hour' AND bucket >= ? AND bucket < ?";
+                bounds.addAll(List.of(innerStart, innerEnd));
+            }
+
+            RollupStats stats;
+            try (PreparedStatement ps = con.prepareStatement("SELECT COALESCE(SUM(cnt), 0), SUM(sum), SUM(sumsq), MIN(min), MAX(max) FROM " + this.table("rollup_bucket")
+                    + " WHERE " + KEY_CONDITION + " AND (" + bucketCond + ")")) {
+                int index = bind(ps, storage, collection, dateattr, column);
+                for (LocalDateTime curBound : bounds) {
+                    ps.setTimestamp(++index, Timestamp.valueOf(curBound));
+                }
+                stats = readStats(ps);
+            }
+            String date = quote(dateattr);
+            try (PreparedStatement ps = con.prepareStatement("SELECT " + aggregates(column) + " FROM " + quote(storage) + "." + quote(collection)
+                    + " WHERE (" + date + " >= ? AND " + date + " < ?) OR (" + date + " >= ? AND " + date + " <= ?)")) {
+                ps.setTimestamp(1, Timestamp.valueOf(start));
+                ps.setTimestamp(2, Timestamp.valueOf(innerStart));
+                ps.setTimestamp(3, Timestamp.valueOf(innerEnd));
+                ps.setTimestamp(4, Timestamp.valueOf(end));
+                stats.merge(readStats(ps));
+            }
+            return stats;
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not get rollup for >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Starts a refresh in background, if there is not already one pending
+     * for the rollup
+     */
+    private void scheduleRefresh(String storage, String collection, String dateattr, String column) {
+        String key = storage + "." + collection + "." + dateattr + "." + column;
+        if (!this.pendingRefreshes.add(key)) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    this.refresh(storage, collection, dateattr, column);
+                } catch (SmartDataAccessorException ex) {
+                    Message msg = new Message("", MessageLevel.ERROR, ex.getLocalizedMessage());
+                    Logger.addMessage(msg);
+                } finally {
+                    this.pendingRefreshes.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Tried again on a later query
+            this.pendingRefreshes.remove(key);
+        }
+    }
+
+    /**
+     * Gets the thread refreshing rollups of all instances one after another
+     */
+    private static synchronized ExecutorService getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(REFRESH_QUEUE), r -> {
+                        Thread t = new Thread(r, "SmartDataLyser-Rollup");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            refreshExecutor = ApplicationExecutors.register(executor);
+        }
+        return refreshExecutor;
+    }
+
+    /**
+     * Adds buckets for all completed hours since the last refresh. The last
+     * lateHours processed hours are aggregated again.
+     *
+     * @param storage Storage name (Schemaname)
+     * @param collection Collections name (Tablename)
+     * @param dateattr Name of the attribute that holds date information
+     * @param column Name of the column or COUNT_ALL for counting datasets
+     * @return Timestamp until the rollup is complete (exclusive) or null if
+     * the collection is empty
+     * @throws SmartDataAccessorException
+     */
+    public LocalDateTime refresh(String storage, String collection, String dateattr, String column) throws SmartDataAccessorException {
+        LocalDateTime upper = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        String date = quote(dateattr);
+        try (Connection con = this.ds.getConnection()) {
+            this.init(con);
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                // Serialize with other refreshes and invalidates
+                lock(con, storage, collection);
+
+                LocalDateTime from = null;
+                try (PreparedStatement ps = con.prepareStatement("SELECT processed_until FROM " + this.table("rollup_state") + " WHERE " + KEY_CONDITION)) {
+                    bind(ps, storage, collection, dateattr, column);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            from = rs.getTimestamp(1).toLocalDateTime().minusHours(this.lateHours);
+                        }
+                    }
+                }
+                if (from == null) {
+                    try (Statement stmt = con.createStatement();
+                            ResultSet rs = stmt.executeQuery("SELECT date_trunc('hour', MIN(" + date + ")) FROM " + quote(storage) + "." + quote(collection))) {
+                        Timestamp first = rs.next() ? rs.getTimestamp(1) : null;
+                        if (first == null) {
+                            con.commit();
+                            return null;
+                        }
+                        from = first.toLocalDateTime();
+                    }
+                }
+                if (!from.isBefore(upper)) {
+                    con.commit();
+                    return upper;
+                }
+
+                LocalDateTime dayFrom = from.truncatedTo(ChronoUnit.DAYS);
+                LocalDateTime dayUpper = upper.truncatedTo(ChronoUnit.DAYS);
+                // Buckets of the refreshed range are replaced, so that hours
+                // that lost all their datasets do not keep old values
+                try (PreparedStatement ps = con.prepareStatement("DELETE FROM " + this.table("rollup_bucket") + " WHERE " + KEY_CONDITION
+                        + " AND ((granularity = 'hour' AND bucket >= ? AND bucket < ?) OR (granularity = 'day' AND bucket >= ? AND bucket < ?))")) {
+                    int index = bind(ps, storage, collection, dateattr, column);
+                    ps.setTimestamp(++index, Timestamp.valueOf(from));
+                    ps.setTimestamp(++index, Timestamp.valueOf(upper));
+                    ps.setTimestamp(++index, Timestamp.valueOf(dayFrom));
+                    ps.setTimestamp(++index, Timestamp.valueOf(dayUpper));
+                    ps.executeUpdate();
+                }
+                // Hour buckets from the collection
+                try (PreparedStatement ps = con.prepareStatement("INSERT INTO " + this.table("rollup_bucket")
+                        + " SELECT ?, ?, ?, ?, 'hour', date_trunc('hour', " + date + "), " + aggregates(column)
+                        + " FROM " + quote(storage) + "." + quote(collection)
+                        + " WHERE " + date + " >= ? AND " + date + " < ?"
+                        + " GROUP BY 6")) {
+                    int index = bind(ps, storage, collection, dateattr, column);
+                    ps.setTimestamp(++index, Timestamp.valueOf(from));
+                    ps.setTimestamp(++index, Timestamp.valueOf(upper));
+                    ps.executeUpdate();
+                }
+                // Day buckets of completed days from the hour buckets
+                try (PreparedStatement ps = con.prepareStatement("INSERT INTO " + this.table("rollup_bucket")
+                        + " SELECT storage, collection, dateattr, col, 'day', date_trunc('day', bucket), SUM(cnt), SUM(sum), SUM(sumsq), MIN(min), MAX(max)"
+                        + " FROM " + this.table("rollup_bucket")
+                        + " WHERE " + KEY_CONDITION + " AND granularity = 'hour' AND bucket >= ? AND bucket < ?"
+                        + " GROUP BY storage, collection, dateattr, col, 6")) {
+                    int index = bind(ps, storage, collection, dateattr, column);
+                    ps.setTimestamp(++index, Timestamp.valueOf(dayFrom));
+                    ps.setTimestamp(++index, Timestamp.valueOf(dayUpper));
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = con.prepareStatement("INSERT INTO " + this.table("rollup_state") + " VALUES (?, ?, ?, ?, ?)"
+                        + " ON CONFLICT (storage, collection, dateattr, col) DO UPDATE SET processed_until = EXCLUDED.processed_until")) {
+                    int index = bind(ps, storage, collection, dateattr, column);
+                    ps.setTimestamp(++index, Timestamp.valueOf(upper));
+                    ps.executeUpdate();
+                }
+                con.commit();
+                return upper;
+            } catch (SQLException ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not refresh rollup for >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Removes all buckets of a collection, they are rebuild in background on
+     * next access. Needed if datasets were changed in hours older than the
+     * refreshed late hours.
+     *
+     * @param storage Storage name (Schemaname)
+     * @param collection Collections name (Tablename)
+     * @throws SmartDataAccessorException
+     */
+    public void invalidate(String storage, String collection) throws SmartDataAccessorException {
+        String cond = " WHERE storage = ? AND collection = ?";
+        try (Connection con = this.ds.getConnection()) {
+            this.init(con);
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                // A running refresh must not store its state after the delete
+                lock(con, storage, collection);
+                for (String curTable : List.of("rollup_state", "rollup_bucket")) {
+                    try (PreparedStatement ps = con.prepareStatement("DELETE FROM " + this.table(curTable) + cond)) {
+                        ps.setString(1, storage);
+                        ps.setString(2, collection);
+                        ps.executeUpdate();
+                    }
+                }
+                con.commit();
+            } catch (SQLException ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException ex) {
+            throw new SmartDataAccessorException("Could not invalidate rollup for >" + collection + "< an sql error occured: " + ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Creates schema and tables for the rollups if they do not exist
+     */
+    private void init(Connection con) throws SQLException {
+        if (this.initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (this.initialized) {
+                return;
+            }
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("CREATE SCHEMA IF NOT EXISTS " + quote(this.schema));
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + this.table("rollup_state")
+                        + " (storage text NOT NULL, collection text NOT NULL, dateattr text NOT NULL, col text NOT NULL,"
+                        + " processed_until timestamp NOT NULL, PRIMARY KEY (storage, collection, dateattr, col))");
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + this.table("rollup_bucket")
+                        + " (storage text NOT NULL, collection text NOT NULL, dateattr text NOT NULL, col text NOT NULL,"
+                        + " granularity text NOT NULL, bucket timestamp NOT NULL, cnt bigint NOT NULL,"
+                        + " sum double precision, sumsq double precision, min double precision, max double precision,"
+                        + " PRIMARY KEY (storage, collection, dateattr, col, granularity, bucket))");
+            }
+            this.initialized = true;
+        }
+    }
+
+    /**
+     * Takes a transaction scoped lock on the rollups of a collection
+     */
+    private static void lock(Connection con, String storage, String collection) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT pg_advisory_xact_lock(hashtext(?))")) {
+            ps.setString(1, storage + "." + collection);
+            ps.executeQuery().close();
+        }
+    }
+
+    private String table(String name) {
+        return quote(this.schema) + "." + quote(name);
+    }
+
+    /**
+     * Binds the key of a rollup to the first four parameters
+     *
+     * @return Index of the last bound parameter
+     */
+    private static int bind(PreparedStatement ps, String storage, String collection, String dateattr, String column) throws SQLException {
+        ps.setString(1, storage);
+        ps.setString(2, collection);
+        ps.setString(3, dateattr);
+        ps.setString(4, column);
+        return 4;
+    }
+
+    /**
+     * Select list calculating count, sum, sum of squares, min and max
+     */
+    private static String aggregates(String column) {
+        if (COUNT_ALL.equals(column)) {
+            return "COUNT(*), NULL::float8, NULL::float8, NULL::float8, NULL::float8";
+        }
+        String col = quote(column) + "::float8";
+        return "COUNT(" + col + "), SUM(" + col + "), SUM(" + col + " * " + col + "), MIN(" + col + "), MAX(" + col + ")";
+    }
+
+    private static RollupStats readStats(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) {
+                return new RollupStats();
+            }
+            long count = rs.getLong(1);
+            double sum = rs.getDouble(2);
+            double sumSquares = rs.getDouble(3);
+            double min = rs.getDouble(4);
+            if (rs.wasNull()) {
+                min = Double.NaN;
+            }
+            double max = rs.getDouble(5);
+            if (rs.wasNull()) {
+                max = Double.NaN;
+            }
+            return new RollupStats(count, sum, sumSquares, min, max);
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    /**
+     * Quotes an identifier, quotes inside are doubled
+     */
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
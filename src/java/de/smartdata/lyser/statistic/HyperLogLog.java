@@ -0,0 +1,144 @@
+package de.smartdata.lyser.statistic;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimates the number of distinct values of a stream with a HyperLogLog
+ * sketch. The sketch uses 2^precision registers of one byte each, its
+ * relative standard error is about 1.04 / sqrt(2^precision), e.g. 0.8% with
+ * precision 14 (16 KiB). Sketches with the same precision can be merged, so
+ * partial sketches (e.g. per table) can be combined to one estimate.
+ *
+ * @author Florian Fehring
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Creates a sketch with the given precision
+     *
+     * @param precision Number of bits used for the register index (4 - 18)
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + " but is " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value to the sketch. Null values are ignored.
+     *
+     * @param value Value to add
+     */
+    public void add(String value) {
+        if (value == null) {
+            return;
+        }
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        this.addHash(fmix64(hash));
+    }
+
+    /**
+     * Adds a value to the sketch
+     *
+     * @param value Value to add
+     */
+    public void add(long value) {
+        this.addHash(fmix64(value));
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (64 - this.precision));
+        // Position of the first set bit in the remaining bits
+        long rest = hash << this.precision;
+        int rank = rest == 0 ? 64 - this.precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > this.registers[index]) {
+            this.registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges an other sketch into this one
+     *
+     * @param other Sketch with the same precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != this.precision) {
+            throw new IllegalArgumentException("Can not merge sketches with precision " + this.precision + " and " + other.precision);
+        }
+        for (int i = 0; i < this.registers.length; i++) {
+            if (other.registers[i] > this.registers[i]) {
+                this.registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Creates an empty sketch with the same precision
+     *
+     * @return New empty sketch
+     */
+    public HyperLogLog newEmpty() {
+        return new HyperLogLog(this.precision);
+    }
+
+    /**
+     * Estimates the number of distinct values added
+     *
+     * @return Estimated distinct count
+     */
+    public long estimate() {
+        int m = this.registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : this.registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1.0 + 1.079 / m);
+        };
+        double estimate = alpha * m * m / sum;
+        // Small cardinalities are more exact with linear counting
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return Relative standard error of the estimate
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(this.registers.length);
+    }
+
+    private static long fmix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53e63c4L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,270 @@
+package de.smartdata.lyser.statistic;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Approximate quantiles of a stream of values with a KLL sketch. The sketch
+ * holds values in levels of compactors, where a value on level h stands for
+ * 2^h original values. Full compactors are sorted and every second value is
+ * promoted to the next level. Memory only depends on the requested error
+ * bound and not on the number of values. Sketches built over parts of a
+ * stream can be merged.
+ *
+ * @author Florian Fehring
+ */
+public class QuantileSketch {
+
+    // Capacity decrease from one level to the level below
+    private static final double CAPACITY_FACTOR = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int height = 1;
+    private int retained = 0;
+    private int maxRetained;
+    private long count = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a sketch whose normalized rank error is about the given epsilon
+     * (e.g. 0.01 means a reported p95 lies between the true p94 and p96).
+     *
+     * @param epsilon Rank error bound between 0 and 1
+     */
+    public QuantileSketch(double epsilon) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("Epsilon must be between 0 and 1 but is " + epsilon);
+        }
+        this.k = Math.max(8, (int) Math.ceil(1.65 / epsilon));
+        this.levels[0] = new double[this.capacity(0)];
+        this.maxRetained = this.capacity(0);
+    }
+
+    private QuantileSketch(int k) {
+        this.k = k;
+        this.levels[0] = new double[this.capacity(0)];
+        this.maxRetained = this.capacity(0);
+    }
+
+    /**
+     * Adds a value to the sketch. NaN values are ignored.
+     *
+     * @param value Value to add
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        this.count++;
+        if (value < this.min) {
+            this.min = value;
+        }
+        if (value > this.max) {
+            this.max = value;
+        }
+        this.append(0, value);
+        if (this.retained >= this.maxRetained) {
+            this.compress();
+        }
+    }
+
+    /**
+     * Merges the values of an other sketch into this one. Both sketches
+     * should be created with the same epsilon.
+     *
+     * @param other Sketch to merge
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        while (this.height < other.height) {
+            this.grow();
+        }
+        for (int h = 0; h < other.height; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                this.append(h, other.levels[h][i]);
+            }
+        }
+        this.count += other.count;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+        while (this.retained >= this.maxRetained) {
+            this.compress();
+        }
+    }
+
+    /**
+     * Creates an empty sketch with the same error bound
+     *
+     * @return New empty sketch
+     */
+    public QuantileSketch newEmpty() {
+        return new QuantileSketch(this.k);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the approximate value at the given quantile
+     *
+     * @param quantile Quantile between 0 and 1
+     * @return Approximate value or NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        return this.getQuantiles(new double[]{quantile})[0];
+    }
+
+    /**
+     * Returns the approximate values at the given quantiles. The retained
+     * values are sorted only once for all quantiles.
+     *
+     * @param quantiles Quantiles between 0 and 1
+     * @return Approximate values, NaN if the sketch is empty
+     */
+    public double[] getQuantiles(double[] quantiles) {
+        double[] result = new double[quantiles.length];
+        if (this.count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        // Collect retained values with their weights, sorted by value
+        double[] values = new double[this.retained];
+        long[] weights = new long[this.retained];
+        int pos = 0;
+        for (int h = 0; h < this.height; h++) {
+            for (int i = 0; i < this.sizes[h]; i++) {
+                values[pos] = this.levels[h][i];
+                weights[pos] = 1L << h;
+                pos++;
+            }
+        }
+        sortByValue(values, weights, 0, values.length - 1);
+
+        for (int q = 0; q < quantiles.length; q++) {
+            double quantile = quantiles[q];
+            if (quantile <= 0) {
+                result[q] = this.min;
+                continue;
+            }
+            if (quantile >= 1) {
+                result[q] = this.max;
+                continue;
+            }
+            double targetWeight = quantile * this.count;
+            long cumWeight = 0;
+            result[q] = this.max;
+            for (int i = 0; i < values.length; i++) {
+                cumWeight += weights[i];
+                if (cumWeight >= targetWeight) {
+                    result[q] = values[i];
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Capacity of a level, the top level has capacity k and each level below
+     * has two thirds of the capacity of the level above.
+     */
+    private int capacity(int level) {
+        int depth = this.height - level - 1;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(this.k * Math.pow(CAPACITY_FACTOR, depth)));
+    }
+
+    private void append(int level, double value) {
+        double[] buffer = this.levels[level];
+        if (this.sizes[level] == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(MIN_CAPACITY, buffer.length * 2));
+            this.levels[level] = buffer;
+        }
+        buffer[this.sizes[level]++] = value;
+        this.retained++;
+    }
+
+    private void grow() {
+        this.levels = Arrays.copyOf(this.levels, this.height + 1);
+        this.sizes = Arrays.copyOf(this.sizes, this.height + 1);
+        this.levels[this.height] = new double[this.k];
+        this.height++;
+        int newMax = 0;
+        for (int h = 0; h < this.height; h++) {
+            newMax += this.capacity(h);
+        }
+        this.maxRetained = newMax;
+    }
+
+    /**
+     * Compacts the lowest full level, half of its values are promoted to the
+     * next level.
+     */
+    private void compress() {
+        for (int h = 0; h < this.height; h++) {
+            if (this.sizes[h] < this.capacity(h)) {
+                continue;
+            }
+            if (h + 1 >= this.height) {
+                this.grow();
+            }
+            double[] buffer = this.levels[h];
+            int size = this.sizes[h];
+            Arrays.sort(buffer, 0, size);
+            // With odd size the smallest value stays on this level
+            int keep = size % 2;
+            int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+            for (int i = keep + offset; i < size; i += 2) {
+                this.append(h + 1, buffer[i]);
+            }
+            this.retained -= size - keep;
+            this.sizes[h] = keep;
+            if (this.retained < this.maxRetained) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sorts values ascending and moves the weights along
+     */
+    private static void sortByValue(double[] values, long[] weights, int low, int high) {
+        while (low < high) {
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmpValue = values[i];
+                    values[i] = values[j];
+                    values[j] = tmpValue;
+                    long tmpWeight = weights[i];
+                    weights[i] = weights[j];
+                    weights[j] = tmpWeight;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller part to keep the stack small
+            if (j - low < high - i) {
+                sortByValue(values, weights, low, j);
+                low = i;
+            } else {
+                sortByValue(values, weights, i, high);
+                high = j;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.smartdata.lyser.statistic;
+
+/**
+ * Accumulates count, sum, mean, variance, min and max of a stream of values
+ * in a single pass and constant memory. Mean and variance are updated with
+ * Welford's algorithm, which stays numerically stable for large counts.
+ * Accumulators of partial streams can be combined with merge().
+ *
+ * @author Florian Fehring
+ */
+public class StatisticAccumulator {
+
+    private long count = 0;
+    private double sum = 0.0;
+    private double mean = 0.0;
+    // Sum of squared differences from the current mean
+    private double m2 = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Adds a value to the accumulator. NaN values are ignored.
+     *
+     * @param value Value to add
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        this.count++;
+        this.sum += value;
+        double delta = value - this.mean;
+        this.mean += delta / this.count;
+        this.m2 += delta * (value - this.mean);
+        if (value < this.min) {
+            this.min = value;
+        }
+        if (value > this.max) {
+            this.max = value;
+        }
+    }
+
+    /**
+     * Merges the values accumulated by an other accumulator into this one.
+     *
+     * @param other Accumulator to merge
+     */
+    public void merge(StatisticAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (this.count == 0) {
+            this.count = other.count;
+            this.sum = other.sum;
+            this.mean = other.mean;
+            this.m2 = other.m2;
+            this.min = other.min;
+            this.max = other.max;
+            return;
+        }
+        long newCount = this.count + other.count;
+        double delta = other.mean - this.mean;
+        this.mean += delta * other.count / newCount;
+        this.m2 += other.m2 + delta * delta * ((double) this.count * other.count / newCount);
+        this.count = newCount;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return Arithmetic mean or NaN if there are no values
+     */
+    public double getMean() {
+        return this.count == 0 ? Double.NaN : this.mean;
+    }
+
+    /**
+     * @return Population variance or NaN if there are no values
+     */
+    public double getPopulationVariance() {
+        return this.count == 0 ? Double.NaN : this.m2 / this.count;
+    }
+
+    /**
+     * @return Sample variance or NaN if there are less than two values
+     */
+    public double getSampleVariance() {
+        return this.count < 2 ? Double.NaN : this.m2 / (this.count - 1);
+    }
+
+    /**
+     * @return Population standard deviation or NaN if there are no values
+     */
+    public double getPopulationStdDeviation() {
+        return Math.sqrt(this.getPopulationVariance());
+    }
+
+    /**
+     * @return Sample standard deviation or NaN if there are less than two
+     * values
+     */
+    public double getSampleStdDeviation() {
+        return Math.sqrt(this.getSampleVariance());
+    }
+
+    /**
+     * @return Minimum or NaN if there are no values
+     */
+    public double getMin() {
+        return this.count == 0 ? Double.NaN : this.min;
+    }
+
+    /**
+     * @return Maximum or NaN if there are no values
+     */
+    public double getMax() {
+        return this.count == 0 ? Double.NaN : this.max;
+    }
+}